@@ -60,7 +60,11 @@ public final class DomUtil {
         return child;
     }
 
-    private static Element addChild(Element parent, QName childName, Consumer<Element> createdElementCallback, String... attributes) {
+    /**
+     * Adds a child without looking for an existing child, for use when the
+     * caller has already established that there isn't one.
+     */
+    public static Element addChild(Element parent, QName childName, Consumer<Element> createdElementCallback, String... attributes) {
         Element child = parent.getOwnerDocument().createElementNS(childName.getNamespaceURI(), childName.getPrefix() + ":" + childName.getLocalPart());
         for (int i = 0; i < attributes.length; i += 2) {
             child.setAttribute(attributes[i], attributes[i + 1]);
@@ -201,6 +205,22 @@ public final class DomUtil {
         }
     }
 
+    /**
+     * Creates an empty, namespace aware {@code Document} of the same
+     * implementation as parsed documents, so that nodes may be adopted between
+     * them.
+     */
+    public static Document newDocument() {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().newDocument();
+        }
+        catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static Document parseResource(String resourceName) {
         try (InputStream in = DomUtil.class.getResourceAsStream(resourceName)) {
             if (in == null) {
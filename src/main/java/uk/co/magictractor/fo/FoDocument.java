@@ -20,6 +20,8 @@ import java.util.List;
 
 import org.w3c.dom.Document;
 
+import uk.co.magictractor.fo.compact.CompactFoDocument;
+
 /**
  *
  */
@@ -36,4 +38,21 @@ public interface FoDocument {
      */
     List<URL> getFontUrls();
 
+    /**
+     * <p>
+     * Returns an immutable snapshot of this document which may be written
+     * concurrently by several threads, each using its own {@code FoWriter},
+     * for example to create a PDF and a PNG preview in parallel.
+     * </p>
+     * <p>
+     * A DOM is not safe for concurrent use, even for reads, so the snapshot
+     * is a {@link CompactFoDocument}, which is written directly as SAX events
+     * without a DOM. Later changes to this document are not reflected in the
+     * snapshot.
+     * </p>
+     */
+    default FoDocument freeze() {
+        return CompactFoDocument.of(this);
+    }
+
 }
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * <p>
+ * Allocates ids for elements in a document, and indexes elements by id so
+ * that they can be found without searching the document.
+ * </p>
+ * <p>
+ * Allocated ids are a prefix followed by a counter, so the same document
+ * content always gets the same ids. Ids are not allocated if they have
+ * already been registered.
+ * </p>
+ * <p>
+ * There is one instance per document, held as user data on the
+ * {@code Document}, so {@code ElementModifier}s can use it via
+ * {@link #of(Document)}. {@code FoDocumentBuilder} registers the ids of the
+ * elements it creates. Instances are thread safe, because sections of a
+ * document may be built concurrently and share their parent's instance.
+ * </p>
+ * <p>
+ * Content which has already been written, such as page-sequences flushed
+ * when streaming, can be released. Its ids remain registered, but the
+ * elements are no longer referenced so that they can be garbage collected.
+ * </p>
+ */
+public final class FoIds {
+
+    private static final String USER_DATA_KEY = FoIds.class.getName();
+
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+    private final Map<String, Element> elements = new ConcurrentHashMap<>();
+    // Ids of elements which have been released.
+    private final Set<String> releasedIds = ConcurrentHashMap.newKeySet();
+
+    private FoIds() {
+    }
+
+    /**
+     * Returns the ids for the document, creating them if necessary. The ids
+     * are not copied if the document is cloned.
+     */
+    public static FoIds of(Document document) {
+        FoIds ids = (FoIds) document.getUserData(USER_DATA_KEY);
+        if (ids == null) {
+            synchronized (document) {
+                ids = (FoIds) document.getUserData(USER_DATA_KEY);
+                if (ids == null) {
+                    ids = new FoIds();
+                    document.setUserData(USER_DATA_KEY, ids, null);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Uses the same ids for another document, so that ids remain unique when
+     * the other document's content is moved into the document which owns
+     * these ids.
+     */
+    public void share(Document other) {
+        other.setUserData(USER_DATA_KEY, this, null);
+    }
+
+    /**
+     * Returns a new id such as "heading-1", which has not been registered.
+     * Ids for each prefix are numbered from 1.
+     */
+    public String allocate(String prefix) {
+        AtomicInteger counter = counters.get(prefix);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(prefix, p -> new AtomicInteger());
+        }
+
+        String id;
+        do {
+            id = prefix + counter.incrementAndGet();
+        } while (contains(id));
+
+        return id;
+    }
+
+    /**
+     * Indexes the element by its id, if it has one.
+     *
+     * @throws IllegalArgumentException if a different element has already
+     *         been registered with the same id
+     */
+    public void register(Element element) {
+        String id = element.getAttribute("id");
+        if (id.isEmpty()) {
+            return;
+        }
+
+        if (releasedIds.contains(id)) {
+            throw new IllegalArgumentException("Duplicate id \"" + id + "\"");
+        }
+        Element existing = elements.putIfAbsent(id, element);
+        if (existing != null && existing != element) {
+            throw new IllegalArgumentException("Duplicate id \"" + id + "\"");
+        }
+    }
+
+    /**
+     * Stops referencing the element and its descendants, keeping their ids,
+     * so that content which has been written can be garbage collected. The
+     * ids may still be referenced by links and page number citations, and
+     * will not be allocated again.
+     */
+    public void release(Element element) {
+        String id = element.getAttribute("id");
+        if (!id.isEmpty() && elements.get(id) == element) {
+            // Added before removal so that the id is never absent.
+            releasedIds.add(id);
+            elements.remove(id);
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                release((Element) child);
+            }
+        }
+    }
+
+    /**
+     * Returns the registered element with the given id, or null if there is
+     * no such element or the element has been released.
+     */
+    public Element getElement(String id) {
+        return elements.get(id);
+    }
+
+    public boolean contains(String id) {
+        return elements.containsKey(id) || releasedIds.contains(id);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("registered", elements.size())
+                .add("released", releasedIds.size())
+                .add("prefixes", counters.keySet())
+                .toString();
+    }
+
+}
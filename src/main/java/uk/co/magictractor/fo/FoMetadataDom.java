@@ -17,6 +17,9 @@ package uk.co.magictractor.fo;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
@@ -24,6 +27,7 @@ import javax.xml.namespace.QName;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 import uk.co.magictractor.fo.namespace.Namespaces;
 
@@ -188,6 +192,83 @@ public class FoMetadataDom implements FoMetadata {
         setRdfDescriptionZonedDateTime(namespaces.xmp().qName("ModifyDate"), modificationDate);
     }
 
+    /**
+     * <p>
+     * Sets each value which is not null in {@code values}, replacing any
+     * existing value. Null values are ignored, the individual setters remove
+     * the existing value when given null.
+     * </p>
+     * <p>
+     * This is cheaper than calling the individual setters. The XMP and
+     * fox:info elements are found or created once, and their existing
+     * children are scanned once, rather than once per value.
+     * </p>
+     */
+    public void setAll(FoMetadataPojo values) {
+        Map<QName, String> descriptionValues = new LinkedHashMap<>();
+        putIfNotNull(descriptionValues, namespaces.dc().qName("title"), values.getTitle());
+        putIfNotNull(descriptionValues, namespaces.dc().qName("creator"), values.getAuthor());
+        putIfNotNull(descriptionValues, namespaces.dc().qName("description"), values.getSubject());
+        putIfNotNull(descriptionValues, namespaces.pdf().qName("Keywords"), values.getKeywords());
+        putIfNotNull(descriptionValues, namespaces.xmp().qName("CreatorTool"), values.getCreator());
+        putIfNotNull(descriptionValues, namespaces.pdf().qName("Producer"), values.getProducer());
+        if (values.getCreationDate() != null) {
+            descriptionValues.put(namespaces.xmp().qName("CreateDate"), DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(values.getCreationDate()));
+        }
+        if (values.getModificationDate() != null) {
+            descriptionValues.put(namespaces.xmp().qName("ModifyDate"), DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(values.getModificationDate()));
+        }
+
+        if (!descriptionValues.isEmpty()) {
+            ensureRdfDescription(true);
+            Element description = rdfDescription.get();
+            Map<QName, Element> existing = new HashMap<>();
+            for (Node child = description.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    existing.putIfAbsent(new QName(child.getNamespaceURI(), child.getLocalName()), (Element) child);
+                }
+            }
+
+            for (Map.Entry<QName, String> entry : descriptionValues.entrySet()) {
+                QName qName = entry.getKey();
+                Element valueElement = existing.get(qName);
+                if (valueElement == null) {
+                    DomUtil.addNamespace(description, qName.getPrefix(), qName.getNamespaceURI());
+                    valueElement = DomUtil.addChild(description, qName, createdElementCallback);
+                }
+                valueElement.setTextContent(entry.getValue());
+            }
+        }
+
+        if (!values.getCustomProperties().isEmpty()) {
+            ensureFoxInfo(true);
+            QName nameQName = namespaces.fox().qName("name");
+            Map<String, Element> existing = new HashMap<>();
+            for (Node child = foxInfo.get().getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE && nameQName.getLocalPart().equals(child.getLocalName())) {
+                    existing.putIfAbsent(((Element) child).getAttribute("key"), (Element) child);
+                }
+            }
+
+            for (Map.Entry<String, String> entry : values.getCustomProperties().entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                Element property = existing.get(entry.getKey());
+                if (property == null) {
+                    property = DomUtil.addChild(foxInfo.get(), nameQName, createdElementCallback, "key", entry.getKey());
+                }
+                property.setTextContent(entry.getValue());
+            }
+        }
+    }
+
+    private static void putIfNotNull(Map<QName, String> map, QName qName, String value) {
+        if (value != null) {
+            map.put(qName, value);
+        }
+    }
+
     private String getRdfDescriptionString(QName qName) {
         ensureRdfDescription(false);
         if (!rdfDescription.isPresent()) {
@@ -198,7 +279,17 @@ public class FoMetadataDom implements FoMetadata {
         return valueElement == null ? null : valueElement.getTextContent();
     }
 
+    // Null removes the value.
     private void setRdfDescriptionString(QName qName, String value) {
+        if (value == null) {
+            ensureRdfDescription(false);
+            Element valueElement = rdfDescription.isPresent() ? DomUtil.findChildNullable(rdfDescription.get(), qName) : null;
+            if (valueElement != null) {
+                rdfDescription.get().removeChild(valueElement);
+            }
+            return;
+        }
+
         ensureRdfDescription(true);
 
         DomUtil.addNamespace(rdfDescription.get(), qName.getPrefix(), qName.getNamespaceURI());
@@ -213,7 +304,7 @@ public class FoMetadataDom implements FoMetadata {
     }
 
     private void setRdfDescriptionZonedDateTime(QName qName, ZonedDateTime value) {
-        setRdfDescriptionString(qName, DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value));
+        setRdfDescriptionString(qName, value == null ? null : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value));
     }
 
     // <fo:declarations xmlns:x="adobe:ns:meta/" xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#"  xmlns:dc="http://purl.org/dc/elements/1.1/" xmlns:xmp="http://ns.adobe.com/xap/1.0/"  xmlns:pdf="http://ns.adobe.com/pdf/1.3/">
@@ -247,7 +338,7 @@ public class FoMetadataDom implements FoMetadata {
                 return;
             }
 
-            rdfDescription = Optional.of(DomUtil.findChildNullable(rdf, namespaces.rdf().qName("Description")));
+            rdfDescription = Optional.ofNullable(DomUtil.findChildNullable(rdf, namespaces.rdf().qName("Description")));
         }
     }
 
@@ -262,7 +353,21 @@ public class FoMetadataDom implements FoMetadata {
         return property == null ? null : property.getTextContent();
     }
 
+    /**
+     * Sets the custom property, or removes it if the value is null.
+     */
     public void setCustomProperty(String key, String value) {
+        if (value == null) {
+            ensureFoxInfo(false);
+            if (foxInfo.isPresent()) {
+                Element property = DomUtil.findChildNullable(foxInfo.get(), namespaces.fox().qName("name"), "key", key);
+                if (property != null) {
+                    foxInfo.get().removeChild(property);
+                }
+            }
+            return;
+        }
+
         ensureFoxInfo(true);
 
         Element property = DomUtil.findOrCreateChild(foxInfo.get(), namespaces.fox().qName("name"), createdElementCallback, "key", key);
@@ -16,6 +16,7 @@
 package uk.co.magictractor.fo;
 
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -173,4 +174,11 @@ public class FoMetadataPojo implements FoMetadata {
         customProperties.put(key, value);
     }
 
+    /**
+     * Custom properties in the order they were first set.
+     */
+    public Map<String, String> getCustomProperties() {
+        return Collections.unmodifiableMap(customProperties);
+    }
+
 }
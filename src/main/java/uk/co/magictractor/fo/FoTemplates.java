@@ -39,7 +39,7 @@ public final class FoTemplates {
                 .withVariableSubstitution("footer.left", "")
                 .withVariableSubstitution("footer.middle", "")
                 // TODO! would be nice to have footer.right and substitute in the page number
-                .buildTemplate();
+                .buildCompiledTemplate();
     }
 
 }
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import uk.co.magictractor.fo.DomUtil;
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoMetadata;
+import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.indent.FoIndent;
+import uk.co.magictractor.fo.modifiers.ElementModifier;
+import uk.co.magictractor.fo.namespace.Namespaces;
+import uk.co.magictractor.fo.visitor.VariableSubstitutionVisitor;
+
+/**
+ * <p>
+ * A template which has been preprocessed so that creating a
+ * {@code FoDocumentBuilder} from it is cheap. Whitespace has already been
+ * stripped from the flow, and the template is held as a flat list of
+ * operations which are replayed into a new DOM Document. The flow and its
+ * ancestors are flagged, so the builder's ElementStack is populated during
+ * the replay rather than by walking the new Document.
+ * </p>
+ * <p>
+ * The compiled operations are immutable and may be shared between threads.
+ * DOM Nodes can't be shared between Documents, so each document still gets
+ * its own copy of the template's Nodes.
+ * </p>
+ * <p>
+ * Text and Elements outside the flow which contain variables, such as
+ * <code>${footer.left}</code> in static content, are also flagged, so the
+ * builder can substitute variables in them without traversing the whole
+ * Document. Elements with ids are flagged too, so that the builder can
+ * register the template's ids.
+ * </p>
+ */
+public final class CompiledFoTemplate implements FoTemplate {
+
+    private static final DOMImplementation DOM_IMPLEMENTATION;
+
+    static {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            DOM_IMPLEMENTATION = factory.newDocumentBuilder().getDOMImplementation();
+        }
+        catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final byte START_ELEMENT = 0;
+    private static final byte END_ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA = 3;
+    private static final byte COMMENT = 4;
+    private static final byte PROCESSING_INSTRUCTION = 5;
+
+    private final FoTemplate template;
+    private final List<Op> ops = new ArrayList<>();
+
+    public static CompiledFoTemplate compile(FoTemplate template) {
+        if (template instanceof CompiledFoTemplate) {
+            return (CompiledFoTemplate) template;
+        }
+        return new CompiledFoTemplate(template);
+    }
+
+    private CompiledFoTemplate(FoTemplate template) {
+        this.template = template;
+
+        Document domDocument = (Document) template.getDomDocument().cloneNode(true);
+        Element body = FoDocumentBuilder.findBody(domDocument, template.getNamespaces());
+        DomUtil.stripTrailingWhiteSpace(body);
+
+        List<Node> bodyPath = new ArrayList<>();
+        for (Node p = body; p.getNodeType() == Node.ELEMENT_NODE; p = p.getParentNode()) {
+            bodyPath.add(p);
+        }
+
+        compileNode(domDocument.getDocumentElement(), bodyPath, body, false);
+    }
+
+    // Variables in the flow are not flagged because the builder traverses the flow anyway.
+    private void compileNode(Node node, List<Node> bodyPath, Element body, boolean isInBody) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                boolean isChildInBody = isInBody || node == body;
+                ops.add(Op.startElement((Element) node, bodyPath.contains(node), isChildInBody));
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    compileNode(child, bodyPath, body, isChildInBody);
+                }
+                ops.add(Op.END);
+                break;
+            case Node.TEXT_NODE:
+                ops.add(new Op(TEXT, null, null, node.getNodeValue(), null, false, !isInBody && hasVariable(node.getNodeValue()), false));
+                break;
+            case Node.CDATA_SECTION_NODE:
+                ops.add(new Op(CDATA, null, null, node.getNodeValue(), null, false, false, false));
+                break;
+            case Node.COMMENT_NODE:
+                ops.add(new Op(COMMENT, null, null, node.getNodeValue(), null, false, false, false));
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                ProcessingInstruction pi = (ProcessingInstruction) node;
+                ops.add(new Op(PROCESSING_INSTRUCTION, null, pi.getTarget(), pi.getData(), null, false, false, false));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported node type " + node.getNodeType());
+        }
+    }
+
+    private static boolean hasVariable(String value) {
+        return value.contains(VariableSubstitutionVisitor.DEFAULT_VARIABLE_OPEN);
+    }
+
+    /**
+     * Creates a new Document from the template. The flow and its ancestors
+     * are added to {@code bodyPath}, starting with the root Element. Text
+     * nodes and Elements outside the flow which contain variables in their
+     * text or attribute values are added to {@code variableNodes}. Elements
+     * with an id are added to {@code idElements}.
+     */
+    /* default */ Document instantiate(List<Element> bodyPath, List<Node> variableNodes, List<Element> idElements) {
+        Document document = DOM_IMPLEMENTATION.createDocument(null, null, null);
+
+        Node parent = document;
+        for (Op op : ops) {
+            switch (op.type) {
+                case START_ELEMENT:
+                    Element element = document.createElementNS(op.uri, op.name);
+                    String[] attributes = op.attributes;
+                    for (int i = 0; i < attributes.length; i += 3) {
+                        element.setAttributeNS(attributes[i], attributes[i + 1], attributes[i + 2]);
+                    }
+                    parent.appendChild(element);
+                    parent = element;
+                    if (op.isBodyPath) {
+                        bodyPath.add(element);
+                    }
+                    if (op.hasVariable) {
+                        variableNodes.add(element);
+                    }
+                    if (op.hasId) {
+                        idElements.add(element);
+                    }
+                    break;
+                case END_ELEMENT:
+                    parent = parent.getParentNode();
+                    break;
+                case TEXT:
+                    Node text = parent.appendChild(document.createTextNode(op.value));
+                    if (op.hasVariable) {
+                        variableNodes.add(text);
+                    }
+                    break;
+                case CDATA:
+                    parent.appendChild(document.createCDATASection(op.value));
+                    break;
+                case COMMENT:
+                    parent.appendChild(document.createComment(op.value));
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    parent.appendChild(document.createProcessingInstruction(op.name, op.value));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown op type " + op.type);
+            }
+        }
+
+        return document;
+    }
+
+    @Override
+    public Document getDomDocument() {
+        return template.getDomDocument();
+    }
+
+    @Override
+    public FoMetadata getMetadata() {
+        return template.getMetadata();
+    }
+
+    @Override
+    public List<URL> getFontUrls() {
+        return template.getFontUrls();
+    }
+
+    @Override
+    public Map<String, ElementModifier> styleModifiers() {
+        return template.styleModifiers();
+    }
+
+    @Override
+    public Map<String, Function<FoDocument, String>> getVariableSubstitutions() {
+        return template.getVariableSubstitutions();
+    }
+
+    @Override
+    public Namespaces getNamespaces() {
+        return template.getNamespaces();
+    }
+
+    @Override
+    public FoIndent getIndent() {
+        return template.getIndent();
+    }
+
+    private static final class Op {
+
+        private static final String[] NO_ATTRIBUTES = new String[0];
+        private static final Op END = new Op(END_ELEMENT, null, null, null, NO_ATTRIBUTES, false, false, false);
+
+        private final byte type;
+        private final String uri;
+        private final String name;
+        private final String value;
+        // Triples of namespace URI, qualified name and value.
+        private final String[] attributes;
+        private final boolean isBodyPath;
+        private final boolean hasVariable;
+        private final boolean hasId;
+
+        private Op(byte type, String uri, String name, String value, String[] attributes, boolean isBodyPath, boolean hasVariable, boolean hasId) {
+            this.type = type;
+            this.uri = uri;
+            this.name = name;
+            this.value = value;
+            this.attributes = attributes;
+            this.isBodyPath = isBodyPath;
+            this.hasVariable = hasVariable;
+            this.hasId = hasId;
+        }
+
+        private static Op startElement(Element element, boolean isBodyPath, boolean isInBody) {
+            NamedNodeMap attributeMap = element.getAttributes();
+            String[] attributes = attributeMap.getLength() == 0 ? NO_ATTRIBUTES : new String[attributeMap.getLength() * 3];
+            boolean hasVariable = false;
+            for (int i = 0; i < attributeMap.getLength(); i++) {
+                Attr attribute = (Attr) attributeMap.item(i);
+                attributes[i * 3] = attribute.getNamespaceURI();
+                attributes[i * 3 + 1] = attribute.getName();
+                attributes[i * 3 + 2] = attribute.getValue();
+                hasVariable |= !isInBody && hasVariable(attribute.getValue());
+            }
+            return new Op(START_ELEMENT, element.getNamespaceURI(), element.getNodeName(), null, attributes, isBodyPath, hasVariable, element.hasAttribute("id"));
+        }
+    }
+
+}
@@ -23,9 +23,15 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -35,19 +41,27 @@ import org.w3c.dom.Text;
 
 import uk.co.magictractor.fo.DomUtil;
 import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoIds;
 import uk.co.magictractor.fo.FoMetadata;
 import uk.co.magictractor.fo.FoMetadataDom;
+import uk.co.magictractor.fo.FoMetadataPojo;
 import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.compact.CompactFoDocument;
+import uk.co.magictractor.fo.compact.FoNodeStore;
 import uk.co.magictractor.fo.indent.FoIndent;
 import uk.co.magictractor.fo.modifiers.ElementModifier;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
 import uk.co.magictractor.fo.namespace.CustomNamespaces;
 import uk.co.magictractor.fo.namespace.Namespace;
 import uk.co.magictractor.fo.namespace.Namespaces;
 import uk.co.magictractor.fo.stack.ArrayElementStack;
+import uk.co.magictractor.fo.stack.ElementKind;
 import uk.co.magictractor.fo.stack.ElementStack;
 import uk.co.magictractor.fo.stack.ImmutableElementStack;
+import uk.co.magictractor.fo.visitor.CompositeNodeVisitor;
 import uk.co.magictractor.fo.visitor.NodeVisitor;
 import uk.co.magictractor.fo.visitor.VariableSubstitutionVisitor;
+import uk.co.magictractor.fo.writer.FoWriter;
 
 /**
  *
@@ -58,6 +72,18 @@ public class FoDocumentBuilder {
     // https://symbl.cc/en/2028/
     private static final String LINE_SEPARATOR = "\u2028";
 
+    private static final int DEFAULT_TABLE_CHUNK_SIZE = 1000;
+    // Number of rows used to estimate column widths.
+    private static final int COLUMN_WIDTH_SAMPLE_SIZE = 100;
+    // Prevents a single long value from squeezing other columns.
+    private static final int MAX_PROPORTIONAL_COLUMN_WIDTH = 40;
+
+    // Used after endDocument(). Shared because it has no state.
+    private static final ElementStack CLOSED_ELEMENT_STACK = new ImmutableElementStack();
+
+    // Passed explicitly to avoid allocating an empty varargs array on each internal call.
+    private static final ElementModifier[] NO_ELEMENT_MODIFIERS = new ElementModifier[0];
+
     //    h1_font_size: round($base_font_size * 1.5)
     //    h2_font_size: round($base_font_size * 1.3)
     //    h3_font_size: round($base_font_size * 1.115)
@@ -93,28 +119,39 @@ public class FoDocumentBuilder {
         DEFAULT_STYLE_MODIFIERS.put("h4", attributeSetter("space-after", "3pt"));
         DEFAULT_STYLE_MODIFIERS.put("h5", attributeSetter("font-size", "90%"));
         DEFAULT_STYLE_MODIFIERS.put("h6", attributeSetter("font-size", "80%"));
+        // Table header cells, consistent with HTML.
+        DEFAULT_STYLE_MODIFIERS.put("th", attributeSetter("font-weight", "bold"));
+        // Table of contents entries, the leader fills the space between the title and page number.
+        DEFAULT_STYLE_MODIFIERS.put("toc-entry", attributeSetter("text-align-last", "justify"));
     }
 
     private Function<Document, Element> bodyFunction;
 
     private Document domDocument;
-    private FoMetadataDom foMetadata;
+    // Only for compiled templates, the template's Nodes outside the flow which contain variables.
+    private List<Node> templateVariableNodes;
+    private Element templateBody;
+    // Values set by withMetadataXxx(), written to the DOM in one pass by applyMetadata().
+    private FoMetadataPojo metadataValues;
+    // Values set to null by withMetadataXxx(), which remove the template's values. FoMetadataPojo treats null as not set.
+    private List<Consumer<FoMetadataDom>> metadataRemovals;
 
     private List<URL> fontUrls;
     private Map<String, ElementModifier> styleModifiers;
     private Map<String, Function<FoDocument, String>> variableSubstitutions;
+    // False while variableSubstitutions is the template's Map, which must not be modified.
+    private boolean isVariableSubstitutionsCopied;
 
     // Stack could/should contain more info? isImplict and info about newlines...
-    private ElementStack elementStack = new ArrayElementStack();
+    private ElementStack elementStack;
+    // Retained to be reused by reset().
+    private final ElementStack openElementStack = new ArrayElementStack();
     // inline-containers have an implicit block
     private int implicitBlocksOnElementStack = 0;
 
     private Namespaces namespaces;
     private FoIndent foIndent;
 
-    // TODO! bin this and have a no-op FoIndent instead?
-    private boolean isPrettyPrint = true;
-
     // If false, then appending text implies startParagraph().
     // Generally it is better to explicitly start the paragraph to allow the paragraph's attributes to be modified.
     // TODO! rename: startHeader() is also treated as a paragraph - textBlock?
@@ -122,28 +159,64 @@ public class FoDocumentBuilder {
 
     private boolean isStartOfLine = true;
 
-    public FoDocumentBuilder(FoTemplate template) {
-        domDocument = (Document) template.getDomDocument().cloneNode(true);
+    // Adjacent text is coalesced into a single Text node, created when the structure changes.
+    private final StringBuilder pendingText = new StringBuilder();
+    private Element pendingTextParent;
+
+    // Non-null if completed page-sequences are written before build().
+    private FoWriter pageSequenceWriter;
+    private PageSequenceFlusher pageSequenceFlusher;
+    // Copy of the page-sequence with an empty flow, cloned to start each subsequent page-sequence.
+    private Element pageSequenceShell;
+    private int maxPageSequenceBlocks;
+    private int maxPageSequenceTextLength;
+    private int pageSequenceBlocks;
+    private int pageSequenceTextLength;
+
+    // Non-null for builders created by newSection().
+    private FoDocumentBuilder sectionParent;
+
+    private FoIds ids;
+    // Ids referred to by links and page number citations, checked by build().
+    private final Set<String> references = new LinkedHashSet<>();
+
+    // Null if headings should not be indexed or assigned ids, see disableHeadingIndex().
+    private HeadingIndex headingIndex = new HeadingIndex();
+    private int bookmarkMaxLevel;
+    private Element tableOfContents;
+    private int tableOfContentsMaxLevel;
 
-        // TODO! maybe include the defaults in the template and parse them from comments
-        if (template.getFontUrls() != null && !template.getFontUrls().isEmpty()) {
-            fontUrls = new ArrayList<>(template.getFontUrls());
-        }
-        styleModifiers = DEFAULT_STYLE_MODIFIERS;
-        variableSubstitutions = template.getVariableSubstitutions();
-        namespaces = template.getNamespaces();
-        foIndent = template.getIndent();
+    public FoDocumentBuilder(FoTemplate template) {
+        reset(template);
+    }
 
-        initBodyAndStack();
+    // Constructor for newSection().
+    private FoDocumentBuilder(FoDocumentBuilder parent) {
+        sectionParent = parent;
+        elementStack = openElementStack;
+        domDocument = DomUtil.newDocument();
+        namespaces = parent.namespaces;
+        foIndent = parent.foIndent;
+        styleModifiers = parent.styleModifiers;
+        headingIndex = parent.headingIndex == null ? null : new HeadingIndex();
+        ids = parent.ids;
+        ids.share(domDocument);
+
+        // Content is appended to a wrapper which is discarded when the section is appended to the parent.
+        Element wrapper = createElementNS("wrapper", namespaces.fo());
+        domDocument.appendChild(wrapper);
+        elementStack.push(wrapper);
     }
 
     /**
      * Constructor typically used for building templates from resource files.
      */
     public FoDocumentBuilder(String resourceName) {
+        elementStack = openElementStack;
         // TODO! rework this, withDocumentResource() predates the constructors with args.
         domDocument = DomUtil.parseResource(resourceName);
-        namespaces = inferNamespaces();
+        ids = FoIds.of(domDocument);
+        namespaces = inferNamespacesAndIndexIds();
         foIndent = FoIndent.infer(domDocument);
 
         Element body = getBody();
@@ -153,6 +226,76 @@ public class FoDocumentBuilder {
         initBodyAndStack();
     }
 
+    /**
+     * <p>
+     * Prepares this builder to build another document from the given
+     * template, discarding all state from the previous document. This allows
+     * builders to be reused, see {@link FoDocumentBuilderPool}.
+     * </p>
+     * <p>
+     * Documents returned by {@link #build()} before the reset are not
+     * affected.
+     * </p>
+     */
+    public FoDocumentBuilder reset(FoTemplate template) {
+        elementStack = openElementStack;
+        elementStack.clear();
+        implicitBlocksOnElementStack = 0;
+        isParagraph = false;
+        isStartOfLine = true;
+        pendingText.setLength(0);
+        pendingTextParent = null;
+        bodyFunction = null;
+        metadataValues = null;
+        metadataRemovals = null;
+        abort();
+        pageSequenceShell = null;
+        sectionParent = null;
+        headingIndex = new HeadingIndex();
+        bookmarkMaxLevel = 0;
+        tableOfContents = null;
+
+        boolean isCompiled = template instanceof CompiledFoTemplate;
+        if (isCompiled) {
+            List<Element> bodyPath = new ArrayList<>();
+            List<Element> idElements = new ArrayList<>();
+            templateVariableNodes = new ArrayList<>();
+            domDocument = ((CompiledFoTemplate) template).instantiate(bodyPath, templateVariableNodes, idElements);
+            bodyPath.forEach(elementStack::push);
+            templateBody = bodyPath.get(bodyPath.size() - 1);
+            ids = FoIds.of(domDocument);
+            idElements.forEach(ids::register);
+        }
+        else {
+            domDocument = (Document) template.getDomDocument().cloneNode(true);
+            templateVariableNodes = null;
+            templateBody = null;
+            // Ids are not copied by cloneNode(), so links to ids in the template, such as "last-page", can be checked.
+            ids = FoIds.of(domDocument);
+            NodeVisitor.traverse(domDocument, new IdVisitor(ids));
+        }
+        references.clear();
+
+        // TODO! maybe include the defaults in the template and parse them from comments
+        if (template.getFontUrls() != null && !template.getFontUrls().isEmpty()) {
+            fontUrls = new ArrayList<>(template.getFontUrls());
+        }
+        else {
+            fontUrls = null;
+        }
+        styleModifiers = DEFAULT_STYLE_MODIFIERS;
+        variableSubstitutions = template.getVariableSubstitutions();
+        isVariableSubstitutionsCopied = false;
+        namespaces = template.getNamespaces();
+        foIndent = template.getIndent();
+
+        if (!isCompiled) {
+            initBodyAndStack();
+        }
+
+        return this;
+    }
+
     // Hmm... bit grubby
     private void initBodyAndStack() {
         Element body = getBody();
@@ -167,8 +310,11 @@ public class FoDocumentBuilder {
         } while (p.getNodeType() == Node.ELEMENT_NODE);
     }
 
-    private Namespaces inferNamespaces() {
-        return NodeVisitor.traverse(domDocument, new NamespaceVisitor()).namespaces.orFallback();
+    // A single traversal for both, resource files may be large.
+    private Namespaces inferNamespacesAndIndexIds() {
+        NamespaceVisitor namespaceVisitor = new NamespaceVisitor();
+        NodeVisitor.traverse(domDocument, new CompositeNodeVisitor(namespaceVisitor, new IdVisitor(ids)));
+        return namespaceVisitor.namespaces.orFallback();
     }
 
     private static class NamespaceVisitor implements NodeVisitor {
@@ -183,6 +329,20 @@ public class FoDocumentBuilder {
         }
     }
 
+    private static class IdVisitor implements NodeVisitor {
+        private final FoIds ids;
+
+        private IdVisitor(FoIds ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public int preChildren(Element element, int depth) {
+            ids.register(element);
+            return STATUS_CONTINUE;
+        }
+    }
+
     public FoDocumentBuilder withBodyFunction(Function<Document, Element> bodyFunction) {
         // TODO! after introducing templates this will always be null
         if (this.domDocument != null) {
@@ -214,6 +374,10 @@ public class FoDocumentBuilder {
     //   </fo:page-sequence>
     //     </fo:flow>
     private Element getBody0(Document domDocument) {
+        return findBody(domDocument, namespaces);
+    }
+
+    /* default */ static Element findBody(Document domDocument, Namespaces namespaces) {
         Element root = domDocument.getDocumentElement();
         // TODO! add DomUtil.getQName(Element)?
         if (!"fo:root".equals(root.getNodeName())) {
@@ -225,22 +389,164 @@ public class FoDocumentBuilder {
         return flow;
     }
 
+    /**
+     * <p>
+     * Writes completed page-sequences to the given writer while the document
+     * is being built so that they can be released, allowing documents of
+     * unbounded size to be created with flat memory use.
+     * </p>
+     * <p>
+     * A new page-sequence is started after a top level block ends if the
+     * current page-sequence has {@code maxBlocks} top level blocks or
+     * {@code maxTextLength} characters of text. Each new page-sequence is a
+     * copy of the template's page-sequence, so has the same static content,
+     * and page numbering continues from the previous page-sequence. A
+     * page-sequence always starts on a new page, so the limits should be large
+     * enough that the page breaks are infrequent.
+     * </p>
+     * <p>
+     * Limits are checked between top level blocks and between the chunks of
+     * top level tables, see {@link #appendTable(List, Iterator, int)}.
+     * </p>
+     * <p>
+     * The metadata must be complete before the first page-sequence is
+     * written, after which the {@code withMetadataXxx()} methods throw
+     * IllegalStateException. {@link #build()} writes the remainder of the
+     * document; the document it returns does not contain the page-sequences
+     * which have already been written and should not be written again.
+     * </p>
+     *
+     * @param maxBlocks maximum number of top level blocks and tables in a
+     *        page-sequence, or zero for no limit
+     * @param maxTextLength approximate maximum number of characters of text
+     *        in a page-sequence, or zero for no limit
+     */
+    public FoDocumentBuilder withPageSequenceStreaming(FoWriter writer, int maxBlocks, int maxTextLength) {
+        if (writer == null) {
+            throw new IllegalArgumentException("writer must not be null");
+        }
+        if (maxBlocks < 0 || maxTextLength < 0 || maxBlocks == 0 && maxTextLength == 0) {
+            throw new IllegalArgumentException("At least one limit must be positive and neither may be negative");
+        }
+        if (pageSequenceWriter != null) {
+            throw new IllegalStateException("Page-sequence streaming has already been enabled");
+        }
+        if (bookmarkMaxLevel > 0 || tableOfContents != null) {
+            throw new IllegalStateException("Page-sequence streaming cannot be used with bookmarks or a table of contents");
+        }
+
+        Element flow = elementStack.peek();
+        Node pageSequence = flow.getParentNode();
+        if (elementStack.peekKind() != ElementKind.FLOW || !PageSequenceFlusher.isPageSequence(pageSequence)) {
+            throw new IllegalStateException("Page-sequence streaming must be enabled before any content is appended");
+        }
+
+        pageSequenceShell = (Element) pageSequence.cloneNode(false);
+        for (Node child = pageSequence.getFirstChild(); child != null; child = child.getNextSibling()) {
+            pageSequenceShell.appendChild(child.cloneNode(child != flow));
+        }
+        // Continue numbering from the previous page-sequence.
+        pageSequenceShell.removeAttribute("initial-page-number");
+        pageSequenceShell.removeAttribute("id");
+
+        pageSequenceWriter = writer;
+        maxPageSequenceBlocks = maxBlocks;
+        maxPageSequenceTextLength = maxTextLength;
+        pageSequenceBlocks = 0;
+        pageSequenceTextLength = 0;
+
+        return this;
+    }
+
+    /**
+     * Builds the document. If page-sequence streaming is enabled, the
+     * remainder of the document is written, see
+     * {@link #withPageSequenceStreaming}.
+     */
     public FoDocument build() {
-        // Could convert metadata to a pojo and then wouldn't need to pass namespaces? or do something else?
+        checkNotSection();
+        flushText();
+
+        checkReferences();
+        applyMetadata();
+
         FoDocument document = new Template(domDocument, namespaces, fontUrls);
 
-        if (variableSubstitutions != null) {
-            NodeVisitor documentVisitor = new VariableSubstitutionVisitor("${", "}", document, variableSubstitutions);
-            NodeVisitor.traverse(document.getDomDocument(), documentVisitor);
+        if (pageSequenceWriter != null) {
+            // Variables have been substituted by the flusher as the content was written.
+            getPageSequenceFlusher().finish(domDocument.getDocumentElement());
+            pageSequenceWriter = null;
+        }
+        else {
+            substituteVariables(document);
+        }
+
+        // After substitution, so that bookmarks and table of contents entries copy the substituted heading text.
+        if (bookmarkMaxLevel > 0) {
+            headingIndex.appendBookmarks(domDocument.getDocumentElement(), namespaces.fo(), bookmarkMaxLevel);
+        }
+        if (tableOfContents != null) {
+            headingIndex.appendTableOfContents(tableOfContents, namespaces.fo(), tableOfContentsMaxLevel, styleModifiers.get("toc-entry"));
         }
 
         return document;
     }
 
+    private void substituteVariables(FoDocument document) {
+        if (variableSubstitutions == null) {
+            return;
+        }
+
+        VariableSubstitutionVisitor visitor = new VariableSubstitutionVisitor(document, variableSubstitutions);
+        if (templateVariableNodes != null && pageSequenceShell == null) {
+            // Appended content is all within the flow, and the template's Nodes containing variables are already known.
+            for (Node node : templateVariableNodes) {
+                visitor.substitute(node);
+            }
+            NodeVisitor.traverse(templateBody, visitor);
+        }
+        else {
+            NodeVisitor.traverse(domDocument, visitor);
+        }
+    }
+
+    /**
+     * <p>
+     * Builds a document backed by a compact node store rather than a DOM,
+     * which uses much less heap for text heavy documents. The returned
+     * document is written directly as SAX events by {@code FoWriter}.
+     * </p>
+     * <p>
+     * The document is not backed by this builder's DOM, so this builder
+     * should be reset or discarded afterwards.
+     * </p>
+     * <p>
+     * The document is immutable, so it may be written concurrently by
+     * several {@code FoWriter}s, see {@link FoDocument#freeze()}.
+     * </p>
+     */
+    public FoDocument buildCompact() {
+        FoDocument document = build();
+
+        return new CompactFoDocument(document.getDomDocument(), namespaces, fontUrls);
+    }
+
     public FoTemplate buildTemplate() {
+        checkNotSection();
+        flushText();
+        applyMetadata();
+
         return new Template(domDocument, namespaces, foIndent, fontUrls, styleModifiers, variableSubstitutions);
     }
 
+    /**
+     * Builds a template which is cheaper to create documents from than
+     * {@link #buildTemplate()}. See {@link CompiledFoTemplate}.
+     */
+    public CompiledFoTemplate buildCompiledTemplate() {
+        return CompiledFoTemplate.compile(buildTemplate());
+    }
+
     public Element appendHeading(int level, String text, ElementModifier... elementModifiers) {
         if (text == null) {
             throw new IllegalArgumentException("text must not be null");
@@ -292,6 +598,14 @@ public class FoDocumentBuilder {
         Element result = startParagraph("h", elementModifiers);
         applyStyleModifier(result, "h" + level);
 
+        if (headingIndex != null) {
+            String id = headingIndex.assignId(result, ids);
+            // When streaming, the headings may be released, and are not needed for bookmarks or a table of contents.
+            if (pageSequenceWriter == null) {
+                headingIndex.add(level, result, id);
+            }
+        }
+
         // Headings should contain only a small amount of text so keep it on the same line.
         isStartOfLine = false;
 
@@ -304,20 +618,83 @@ public class FoDocumentBuilder {
     }
 
     public void appendText(String text) {
+        appendText((CharSequence) text);
+    }
+
+    /**
+     * Appends text from a {@code CharSequence}, such as a
+     * {@code StringBuilder}, without first converting it to a {@code String}.
+     * The characters are copied, so the caller may reuse the sequence
+     * afterwards.
+     */
+    public void appendText(CharSequence text) {
         if (!isParagraph) {
-            startParagraph();
+            startParagraph(NO_ELEMENT_MODIFIERS);
         }
 
         appendText0(text);
     }
 
-    private void appendText0(String text) {
+    /**
+     * Appends text from part of a character array, such as a buffer used by a
+     * {@code Reader} or passed to {@code ContentHandler.characters()}. The
+     * characters are copied, so the caller may reuse the array afterwards.
+     */
+    public void appendText(char[] text, int start, int length) {
+        if (text == null) {
+            throw new IllegalArgumentException("Cannot append null");
+        }
+        if (start < 0 || length < 0 || start + length > text.length) {
+            throw new IllegalArgumentException("start and length must be within the array");
+        }
+        if (!isParagraph) {
+            startParagraph(NO_ELEMENT_MODIFIERS);
+        }
+
+        startText();
+        pendingText.append(text, start, length);
+        pageSequenceTextLength += length;
+    }
+
+    private void appendText0(CharSequence text) {
         if (text == null) {
             throw new IllegalArgumentException("Cannot append null");
         }
 
-        Text textNode = domDocument.createTextNode(text);
-        append(textNode);
+        startText();
+        pendingText.append(text);
+        pageSequenceTextLength += text.length();
+    }
+
+    // Prepares pendingText for text to be appended to the Element at the top of the stack.
+    private void startText() {
+        Element parent = elementStack.peek();
+        if (parent != pendingTextParent) {
+            flushText();
+            if (isStartOfLine) {
+                separateLine();
+            }
+            pendingTextParent = parent;
+        }
+        else if (isStartOfLine && pendingText.length() > 0) {
+            pendingText.append('\n');
+        }
+        isStartOfLine = false;
+    }
+
+    // Must be called before any other change to the DOM. Elements may have been popped
+    // since the text was appended, so the Text is not necessarily added to the top of the stack.
+    private void flushText() {
+        if (pendingTextParent == null) {
+            return;
+        }
+
+        if (pendingText.length() > 0) {
+            Text textNode = domDocument.createTextNode(pendingText.toString());
+            pendingTextParent.appendChild(textNode);
+            pendingText.setLength(0);
+        }
+        pendingTextParent = null;
     }
 
     public void appendText(String text, ElementModifier... elementModifiers) {
@@ -336,7 +713,7 @@ public class FoDocumentBuilder {
     // no modifiers is permitted, the calling code could add attributes to the returned Element
     public Element startInline(ElementModifier... elementModifiers) {
         if (!isParagraph) {
-            startParagraph();
+            startParagraph(NO_ELEMENT_MODIFIERS);
         }
 
         boolean requiresContainer = requiresContainer(elementModifiers);
@@ -345,12 +722,13 @@ public class FoDocumentBuilder {
         for (ElementModifier elementModifier : elementModifiers) {
             elementModifier.modify(foInline);
         }
+        ids.register(foInline);
 
         append(foInline);
-        elementStack.push(foInline);
+        elementStack.push(foInline, requiresContainer ? ElementKind.INLINE_CONTAINER : ElementKind.INLINE);
 
         if (requiresContainer) {
-            pushBlock(null);
+            pushBlock(null, NO_ELEMENT_MODIFIERS);
             // TODO! how to close the block robustly (for now only done in appendText())
         }
 
@@ -368,13 +746,13 @@ public class FoDocumentBuilder {
 
     public void endInline() {
         // Can be inline-container in which case we need two pops...
-        if ("block".equals(elementStack.peek().getLocalName())) {
+        if (elementStack.peekKind() == ElementKind.BLOCK) {
             elementStack.pop();
-            if (!"inline-container".equals(elementStack.peek().getLocalName())) {
+            if (elementStack.peekKind() != ElementKind.INLINE_CONTAINER) {
                 throw new IllegalStateException("Expected inline-container element at top of stack, but is " + elementStack.peek().getLocalName());
             }
         }
-        else if (!"inline".equals(elementStack.peek().getLocalName())) {
+        else if (elementStack.peekKind() != ElementKind.INLINE) {
             throw new IllegalStateException("Expected inline element at top of stack, but is " + elementStack.peek().getLocalName());
         }
 
@@ -404,7 +782,7 @@ public class FoDocumentBuilder {
             throw new IllegalStateException();
         }
 
-        popBlock(true);
+        popBlock();
 
         isParagraph = false;
     }
@@ -425,36 +803,585 @@ public class FoDocumentBuilder {
         }
 
         // could pass a param indicating no recursion?
-        popBlock(true);
+        popBlock();
     }
 
-    private void popBlock(boolean doIndents) {
+    private void popBlock() {
         // Usually the paragraph fo:block is last,
         // but there could be stacked fo:inline Elements too,
         // so possibly multiple pops.
+        ElementKind poppedKind;
         Element popped;
-        //
         do {
+            poppedKind = elementStack.peekKind();
             popped = elementStack.pop();
-        } while (!"block".equals(popped.getLocalName()));
+        } while (poppedKind != ElementKind.BLOCK);
 
-        if (isPrettyPrint && doIndents) {
-            popped.appendChild(createIndentNode());
+        isStartOfLine = true;
+        checkPageSequenceLimits(popped);
+    }
+
+    //// Tables
+
+    public <R> Element appendTable(List<TableColumn<R>> columns, Iterator<R> rows) {
+        return appendTable(columns, rows, DEFAULT_TABLE_CHUNK_SIZE);
+    }
+
+    /**
+     * <p>
+     * Appends a {@code fo:table} with rows pulled lazily from an Iterator, so
+     * the caller does not need to hold all rows in memory.
+     * </p>
+     * <p>
+     * Column widths are fixed before any rows are added, which allows FOP to
+     * use {@code table-layout="fixed"} rather than measuring every cell.
+     * Widths not set on the column are estimated from the lengths of the
+     * header and the first rows.
+     * </p>
+     * <p>
+     * Rows are grouped into {@code fo:table-body} elements of at most
+     * {@code chunkSize} rows. The table renders as a single table with a
+     * header which repeats after page breaks.
+     * </p>
+     * <p>
+     * If page-sequence streaming is enabled and the table is a top level
+     * table, each chunk counts as a top level block. When a page-sequence
+     * limit is reached at the end of a chunk, the table is ended, the
+     * page-sequence is written and the remaining rows continue in a new
+     * table with the same columns and header, so tables of any size can be
+     * built with flat memory use. The returned Element is then the first
+     * table, which has already been written.
+     * </p>
+     */
+    public <R> Element appendTable(List<TableColumn<R>> columns, Iterator<R> rows, int chunkSize) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("columns must not be empty");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+
+        if (isParagraph) {
+            endParagraph();
+        }
+
+        List<R> sample = new ArrayList<>();
+        while (sample.size() < COLUMN_WIDTH_SAMPLE_SIZE && rows.hasNext()) {
+            sample.add(rows.next());
+        }
+
+        List<String> columnWidths = columnWidths(columns, sample);
+        boolean hasHeaders = hasHeaders(columns);
+        // Null unless the table may be split between page-sequences.
+        Runnable continueTable = null;
+        if (pageSequenceWriter != null && elementStack.peekKind() == ElementKind.FLOW) {
+            continueTable = () -> startTable(columns, columnWidths, hasHeaders);
+        }
+
+        Element table = startTable(columns, columnWidths, hasHeaders);
+
+        int rowCount = 0;
+        for (R row : sample) {
+            appendTableRow(columns, row, rowCount++, chunkSize, continueTable);
+        }
+        sample.clear();
+        while (rows.hasNext()) {
+            appendTableRow(columns, rows.next(), rowCount++, chunkSize, continueTable);
+        }
+
+        if (rowCount == 0) {
+            // fo:table-body must contain at least one row.
+            pushElement("table-body");
+            pushElement("table-row");
+            for (TableColumn<R> column : columns) {
+                appendTableCell(null, "td", column.getCellModifier());
+            }
+            popElement();
+        }
+
+        // table-body
+        popElement();
+        // table
+        popElement();
+
+        return table;
+    }
+
+    private <R> Element startTable(List<TableColumn<R>> columns, List<String> columnWidths, boolean hasHeaders) {
+        Element table = pushElement("table");
+        table.setAttribute("table-layout", "fixed");
+        table.setAttribute("width", "100%");
+
+        for (String columnWidth : columnWidths) {
+            Element tableColumn = createElementNS("table-column", namespaces.fo());
+            tableColumn.setAttribute("column-width", columnWidth);
             isStartOfLine = true;
+            append(tableColumn);
         }
+
+        if (hasHeaders) {
+            pushElement("table-header");
+            pushElement("table-row");
+            for (TableColumn<R> column : columns) {
+                appendTableCell(column.getHeader(), "th", ElementModifiers.noOp());
+            }
+            popElement();
+            popElement();
+        }
+
+        return table;
     }
 
-    public void endDocument() {
+    private <R> void appendTableRow(List<TableColumn<R>> columns, R row, int rowIndex, int chunkSize, Runnable continueTable) {
+        if (rowIndex % chunkSize == 0) {
+            if (rowIndex > 0) {
+                // table-body
+                popElement();
+                if (continueTable != null) {
+                    // Each completed chunk counts as a top level block.
+                    pageSequenceBlocks++;
+                    if (isPageSequenceLimitReached()) {
+                        // table
+                        elementStack.pop();
+                        startNextPageSequence();
+                        continueTable.run();
+                    }
+                }
+            }
+            pushElement("table-body");
+        }
+
+        pushElement("table-row");
+        for (TableColumn<R> column : columns) {
+            appendTableCell(column.valueOf(row), "td", column.getCellModifier());
+        }
+        popElement();
+    }
+
+    // Cells are kept on a single line, <fo:table-cell><fo:block>text</fo:block></fo:table-cell>
+    private void appendTableCell(String text, String attributesKey, ElementModifier cellModifier) {
+        Element foTableCell = createElementNS("table-cell", namespaces.fo());
+        Element foBlock = createElementNS("block", namespaces.fo());
+        applyStyleModifier(foBlock, attributesKey);
+        cellModifier.modify(foBlock);
+        ids.register(foBlock);
+        if (text != null && !text.isEmpty()) {
+            foBlock.appendChild(domDocument.createTextNode(text));
+            pageSequenceTextLength += text.length();
+        }
+        foTableCell.appendChild(foBlock);
+
+        isStartOfLine = true;
+        append(foTableCell);
+    }
+
+    private <R> List<String> columnWidths(List<TableColumn<R>> columns, List<R> sample) {
+        List<String> result = new ArrayList<>(columns.size());
+        for (TableColumn<R> column : columns) {
+            if (column.getWidth() != null) {
+                result.add(column.getWidth());
+                continue;
+            }
+            int length = column.getHeader() == null ? 1 : column.getHeader().length();
+            for (R row : sample) {
+                String value = column.valueOf(row);
+                if (value != null && value.length() > length) {
+                    length = value.length();
+                }
+            }
+            length = Math.max(1, Math.min(length, MAX_PROPORTIONAL_COLUMN_WIDTH));
+            result.add("proportional-column-width(" + length + ")");
+        }
+        return result;
+    }
+
+    private <R> boolean hasHeaders(List<TableColumn<R>> columns) {
+        for (TableColumn<R> column : columns) {
+            if (column.getHeader() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Like pushBlock(), but for elements which do not contain text directly.
+    private Element pushElement(String name) {
+        Element element = createElementNS(name, namespaces.fo());
+
+        isStartOfLine = true;
+        append(element);
+        elementStack.push(element, ElementKind.OTHER);
+        isStartOfLine = true;
+
+        return element;
+    }
+
+    //// Links and ids
+
+    /**
+     * Appends a {@code fo:basic-link} to the element with the given id. The
+     * id may belong to an element which is appended later, {@link #build()}
+     * checks that the element exists.
+     */
+    public Element appendInternalLink(String text, String internalDestination, ElementModifier... elementModifiers) {
+        if (!isParagraph) {
+            startParagraph(NO_ELEMENT_MODIFIERS);
+        }
+
+        Element link = createElementNS("basic-link", namespaces.fo());
+        link.setAttribute("internal-destination", internalDestination);
+        for (ElementModifier elementModifier : elementModifiers) {
+            elementModifier.modify(link);
+        }
+        append(link);
+        elementStack.push(link, ElementKind.OTHER);
+        appendText0(text);
+        elementStack.pop();
+
+        references.add(internalDestination);
+
+        return link;
+    }
+
+    /**
+     * Appends a {@code fo:page-number-citation} for the page containing the
+     * element with the given id. The id may belong to an element which is
+     * appended later, {@link #build()} checks that the element exists.
+     */
+    public Element appendPageNumberCitation(String refId) {
+        if (!isParagraph) {
+            startParagraph(NO_ELEMENT_MODIFIERS);
+        }
+
+        Element citation = createElementNS("page-number-citation", namespaces.fo());
+        citation.setAttribute("ref-id", refId);
+        append(citation);
+
+        references.add(refId);
+
+        return citation;
+    }
+
+    /**
+     * Returns the element with the given id, if it was created by this
+     * builder or a section appended to this builder. The document is not
+     * searched.
+     */
+    public Element getElementById(String id) {
+        return ids.getElement(id);
+    }
+
+    /**
+     * Returns the ids for the document, which may be used to allocate ids
+     * which are unique in the document.
+     */
+    public FoIds getIds() {
+        return ids;
+    }
+
+    private void checkReferences() {
+        List<String> missing = new ArrayList<>();
+        for (String reference : references) {
+            if (!ids.contains(reference)) {
+                missing.add(reference);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Links or page number citations refer to ids which have not been assigned to any element: " + missing);
+        }
+    }
+
+    //// Bookmarks and table of contents
+
+    /**
+     * <p>
+     * Adds a {@code fo:bookmark-tree} to the document when it is built, with
+     * a bookmark for each heading with a level no greater than
+     * {@code maxLevel}. Bookmarks are nested according to the heading levels.
+     * </p>
+     * <p>
+     * The headings are indexed as they are started, so the document is not
+     * traversed to find them. Bookmarks cannot be used with page-sequence
+     * streaming because the bookmark-tree precedes the page-sequences.
+     * </p>
+     */
+    public FoDocumentBuilder withBookmarkTree(int maxLevel) {
+        checkHeadingLevel(maxLevel);
+        checkHeadingIndex();
+        bookmarkMaxLevel = maxLevel;
+
+        return this;
+    }
+
+    /**
+     * <p>
+     * Appends a table of contents, which is populated when the document is
+     * built with an entry for each heading with a level no greater than
+     * {@code maxLevel}, including headings which have not yet been appended.
+     * Each entry links to its heading and cites its page number.
+     * </p>
+     * <p>
+     * Entries are styled using the "toc-entry" style modifier and are indented
+     * according to the heading levels. A table of contents cannot be used with
+     * page-sequence streaming.
+     * </p>
+     */
+    public Element appendTableOfContents(int maxLevel, ElementModifier... elementModifiers) {
+        checkHeadingLevel(maxLevel);
+        checkHeadingIndex();
+        checkNotSection();
+        if (tableOfContents != null) {
+            throw new IllegalStateException("A table of contents has already been appended");
+        }
+
         if (isParagraph) {
             endParagraph();
         }
+        tableOfContents = pushBlock("toc", elementModifiers);
+        tableOfContentsMaxLevel = maxLevel;
+        popBlock();
+
+        return tableOfContents;
+    }
+
+    private void checkHeadingLevel(int maxLevel) {
+        if (maxLevel < 1 || maxLevel > 6) {
+            throw new IllegalArgumentException("maxLevel must be between 1 and 6");
+        }
+    }
 
-        if (isPrettyPrint) {
-            Element body = elementStack.pop();
-            body.appendChild(createIndentNode());
+    private void checkHeadingIndex() {
+        if (pageSequenceWriter != null) {
+            throw new IllegalStateException("Bookmarks and a table of contents cannot be used with page-sequence streaming");
+        }
+        if (headingIndex == null) {
+            throw new IllegalStateException("Headings are not indexed by this builder");
         }
+    }
+
+    // Used when building fragments, which may be appended many times so must not contain ids. FoFragment rejects other ids.
+    /* default */ void disableHeadingIndex() {
+        headingIndex = null;
+    }
 
-        elementStack = new ImmutableElementStack();
+    //// Sections
+
+    /**
+     * <p>
+     * Creates a builder for a section of this document, such as a chapter,
+     * which can be filled on another thread while this builder and other
+     * sections are being filled. The section is later added to this document
+     * using {@link #appendSection}.
+     * </p>
+     * <p>
+     * Each section has its own {@code Document}, so sections do not contend
+     * with each other or with this builder. Only the methods which append
+     * content should be used on a section builder, it cannot be built.
+     * </p>
+     * <p>
+     * This method should be called on the thread using this builder.
+     * </p>
+     */
+    public FoDocumentBuilder newSection() {
+        return new FoDocumentBuilder(this);
+    }
+
+    /**
+     * <p>
+     * Appends the content of a section created by {@link #newSection()}. The
+     * section's nodes are adopted by this document rather than copied, and
+     * the section builder cannot be used afterwards.
+     * </p>
+     * <p>
+     * This method should be called on the thread using this builder, after
+     * the section has been filled. Sections may be appended in any order,
+     * regardless of the order in which they were created or filled.
+     * </p>
+     */
+    public void appendSection(FoDocumentBuilder section) {
+        if (section.sectionParent != this) {
+            throw new IllegalArgumentException("The section was not created by this builder");
+        }
+        if (section.elementStack == CLOSED_ELEMENT_STACK) {
+            throw new IllegalStateException("The section has already been appended");
+        }
+        Element wrapper = section.closeSection();
+        if (isParagraph) {
+            endParagraph();
+        }
+
+        Node child;
+        while ((child = wrapper.getFirstChild()) != null) {
+            // Removes the child from the wrapper. Descendants are not copied, only their owner Document changes.
+            Node adopted = domDocument.adoptNode(child);
+            if (adopted == null) {
+                throw new IllegalStateException("Nodes could not be adopted from " + section.domDocument.getClass().getName() + " by " + domDocument.getClass().getName());
+            }
+            isStartOfLine = true;
+            append(adopted);
+            // Counted per node, so that the limits are checked with the text in the current page-sequence.
+            pageSequenceTextLength += textLength(adopted);
+            if (adopted.getNodeType() == Node.ELEMENT_NODE) {
+                checkPageSequenceLimits((Element) adopted);
+            }
+        }
+        isStartOfLine = true;
+
+        references.addAll(section.references);
+        if (headingIndex != null && section.headingIndex != null) {
+            headingIndex.addAll(section.headingIndex);
+        }
+    }
+
+    // Sum of the lengths of the Text nodes in the subtree, without concatenating them like getTextContent().
+    private static int textLength(Node node) {
+        int length = 0;
+        Node current = node;
+        while (true) {
+            if (current instanceof Text) {
+                length += ((Text) current).getLength();
+            }
+            Node next = current.getFirstChild();
+            while (next == null && current != node) {
+                next = current.getNextSibling();
+                if (next == null) {
+                    current = current.getParentNode();
+                }
+            }
+            if (next == null) {
+                return length;
+            }
+            current = next;
+        }
+    }
+
+    // Ends the section and returns the Element containing its content.
+    /* default */ Element closeSection() {
+        if (sectionParent == null) {
+            throw new IllegalStateException("Not a section");
+        }
+        endDocument();
+
+        return domDocument.getDocumentElement();
+    }
+
+    //// Fragments
+
+    /**
+     * Appends a copy of the fragment's content. This is much cheaper than
+     * appending the same content again using methods such as
+     * {@link #appendText}.
+     */
+    public void appendFragment(FoFragment fragment) {
+        appendFragment(fragment, Collections.emptyMap());
+    }
+
+    /**
+     * Appends a copy of the fragment's content, with slots such as
+     * <code>${name}</code> in the fragment's text replaced by the given
+     * values. Slots without values are retained, so may be replaced by this
+     * builder's variable substitutions.
+     */
+    public void appendFragment(FoFragment fragment, Map<String, String> slotValues) {
+        if (isParagraph) {
+            endParagraph();
+        }
+
+        UnaryOperator<String> textOperator = fragment.slotOperator(slotValues);
+        for (FoNodeStore nodes : fragment.getNodeStores()) {
+            isStartOfLine = true;
+            separateLine();
+            Node appended = nodes.appendTo(elementStack.peek(), textOperator);
+            pageSequenceTextLength += nodes.textLength();
+            if (appended.getNodeType() == Node.ELEMENT_NODE) {
+                checkPageSequenceLimits((Element) appended);
+            }
+        }
+        isStartOfLine = true;
+    }
+
+    private void checkNotSection() {
+        if (sectionParent != null) {
+            throw new IllegalStateException("Sections cannot be built, use appendSection() on the builder which created the section");
+        }
+    }
+
+    private void popElement() {
+        Element popped = elementStack.pop();
+        isStartOfLine = true;
+        checkPageSequenceLimits(popped);
+    }
+
+    //// Page-sequence streaming
+
+    private void checkPageSequenceLimits(Element popped) {
+        if (pageSequenceWriter == null || elementStack.peekKind() != ElementKind.FLOW) {
+            return;
+        }
+
+        pageSequenceBlocks++;
+        // Do not separate headings from the following content.
+        if (isPageSequenceLimitReached() && popped.getAttribute("keep-with-next").isEmpty()) {
+            startNextPageSequence();
+        }
+    }
+
+    private boolean isPageSequenceLimitReached() {
+        return maxPageSequenceBlocks > 0 && pageSequenceBlocks >= maxPageSequenceBlocks
+                || maxPageSequenceTextLength > 0 && pageSequenceTextLength >= maxPageSequenceTextLength;
+    }
+
+    private void startNextPageSequence() {
+        flushText();
+        elementStack.pop();
+        Element pageSequence = elementStack.pop();
+        getPageSequenceFlusher().flush(pageSequence);
+
+        Element nextPageSequence = (Element) pageSequenceShell.cloneNode(true);
+        elementStack.peek().appendChild(nextPageSequence);
+        elementStack.push(nextPageSequence, ElementKind.OTHER);
+        elementStack.push(DomUtil.findChild(nextPageSequence, namespaces.fo().qName("flow")), ElementKind.FLOW);
+
+        pageSequenceBlocks = 0;
+        pageSequenceTextLength = 0;
+    }
+
+    /**
+     * <p>
+     * Abandons the document being built. If page-sequence streaming is
+     * enabled, the stream is aborted so that the writer releases resources
+     * such as temporary files and font URLs set for the current thread.
+     * </p>
+     * <p>
+     * Call this if {@link #build()} will not be called, for example because
+     * creating the content failed. The builder must be reset before it is
+     * used again.
+     * </p>
+     */
+    public void abort() {
+        if (pageSequenceFlusher != null) {
+            pageSequenceFlusher.abort();
+            pageSequenceFlusher = null;
+        }
+        pageSequenceWriter = null;
+    }
+
+    // Created when first used so that the metadata, font URLs and variable substitutions are complete.
+    private PageSequenceFlusher getPageSequenceFlusher() {
+        if (pageSequenceFlusher == null) {
+            applyMetadata();
+            pageSequenceFlusher = new PageSequenceFlusher(pageSequenceWriter, new Template(domDocument, namespaces, fontUrls), variableSubstitutions);
+        }
+        return pageSequenceFlusher;
+    }
+
+    public void endDocument() {
+        if (isParagraph) {
+            endParagraph();
+        }
+        flushText();
+
+        elementStack = CLOSED_ELEMENT_STACK;
     }
 
     public void lineBreak() {
@@ -469,24 +1396,21 @@ public class FoDocumentBuilder {
      * Inserts a newline into the current paragraph or between blocks.
      * </p>
      * <p>
-     * This is generally just to make the XML more human-readable. Attributes
-     * can be added to blocks to preserve whitespace for rendering blocks of
-     * code etc.
+     * The newline renders as a space unless the block preserves linefeeds,
+     * which can be used for rendering blocks of code etc. Indentation is not
+     * added to the DOM, it is added by {@code FoPassthroughHandler} when the
+     * document is written as XSL-FO.
      * </p>
      */
     public void newline() {
-        if (isStartOfLine && isPrettyPrint) {
-            elementStack.peek().appendChild(domDocument.createTextNode("\n"));
+        if (isStartOfLine) {
+            // Blank line.
+            separateLine();
         }
 
         isStartOfLine = true;
     }
 
-    private Node createIndentNode() {
-        String indent = foIndent.createIndent(elementStack.depth());
-        return domDocument.createTextNode(indent);
-    }
-
     // heading should open and close block on same line
     // paragraph should should have all text on lines in between
     private Element pushBlock(String attributeKey, ElementModifier... elementModifiers) {
@@ -501,9 +1425,10 @@ public class FoDocumentBuilder {
         for (ElementModifier elementModifier : elementModifiers) {
             elementModifier.modify(foBlock);
         }
+        ids.register(foBlock);
 
         append(foBlock);
-        elementStack.push(foBlock);
+        elementStack.push(foBlock, ElementKind.BLOCK);
 
         isStartOfLine = true;
 
@@ -511,17 +1436,39 @@ public class FoDocumentBuilder {
     }
 
     // Append Element to the last Element on the stack.
-    // Does indent if appropriate.
     // Does NOT push the Element onto the stack.
     private void append(Node node) {
-        if (isPrettyPrint && isStartOfLine) {
-            elementStack.peek().appendChild(createIndentNode());
+        flushText();
+        if (isStartOfLine) {
+            separateLine();
         }
 
         elementStack.peek().appendChild(node);
         isStartOfLine = false;
     }
 
+    // A linefeed between content on separate lines within text renders as a space, so it must be retained.
+    // Appended to an adjacent Text node where possible rather than adding a Node.
+    private void separateLine() {
+        flushText();
+        ElementKind kind = elementStack.peekKind();
+        if (kind != ElementKind.BLOCK && kind != ElementKind.INLINE) {
+            return;
+        }
+        Element parent = elementStack.peek();
+        Node last = parent.getLastChild();
+        if (last == null) {
+            return;
+        }
+
+        if (last.getNodeType() == Node.TEXT_NODE) {
+            ((Text) last).appendData("\n");
+        }
+        else {
+            parent.appendChild(domDocument.createTextNode("\n"));
+        }
+    }
+
     private void applyStyleModifier(Element foBlock, String attributeKey) {
         ElementModifier modifier = styleModifiers.get(attributeKey);
         if (modifier != null) {
@@ -531,62 +1478,82 @@ public class FoDocumentBuilder {
 
     // <fo:root xmlns:fo="http://www.w3.org/1999/XSL/Format">
     private Element createElementNS(String name, Namespace namespace) {
-        return domDocument.createElementNS(namespace.getUri(), namespace.getPrefix() + ":" + name);
+        return domDocument.createElementNS(namespace.getUri(), namespace.qualifiedName(name));
     }
 
     //// Metadata
 
-    private FoMetadataDom getMetadata() {
-        if (foMetadata == null) {
-            foMetadata = new FoMetadataDom(domDocument, namespaces, foIndent::applyIndent);
+    private FoMetadataPojo getMetadata() {
+        if (metadataValues == null) {
+            metadataValues = new FoMetadataPojo();
+            // Only values which are explicitly set should replace the template's values.
+            metadataValues.setCreationDate(null);
+            metadataRemovals = new ArrayList<>();
         }
-        return foMetadata;
+        return metadataValues;
     }
 
-    public FoDocumentBuilder withMetadataTitle(String title) {
-        getMetadata().setTitle(title);
+    private <T> FoDocumentBuilder withMetadataValue(T value, BiConsumer<FoMetadataPojo, T> pojoSetter, BiConsumer<FoMetadataDom, T> domSetter) {
+        if (pageSequenceFlusher != null) {
+            // fo:declarations has already been written.
+            throw new IllegalStateException("Metadata cannot be changed after the first page-sequence has been written");
+        }
+        pojoSetter.accept(getMetadata(), value);
+        if (value == null) {
+            metadataRemovals.add(metadataDom -> domSetter.accept(metadataDom, null));
+        }
         return this;
     }
 
+    // Called before the DOM metadata is read or written.
+    private void applyMetadata() {
+        if (metadataValues != null) {
+            // Elements are indented when written, so nothing to do when they are created.
+            FoMetadataDom metadataDom = new FoMetadataDom(domDocument, namespaces, element -> {
+            });
+            // Removals first, so that a value set after null is retained.
+            metadataRemovals.forEach(removal -> removal.accept(metadataDom));
+            metadataDom.setAll(metadataValues);
+            metadataValues = null;
+            metadataRemovals = null;
+        }
+    }
+
+    public FoDocumentBuilder withMetadataTitle(String title) {
+        return withMetadataValue(title, FoMetadataPojo::setTitle, FoMetadataDom::setTitle);
+    }
+
     public FoDocumentBuilder withMetadataAuthor(String author) {
-        getMetadata().setAuthor(author);
-        return this;
+        return withMetadataValue(author, FoMetadataPojo::setAuthor, FoMetadataDom::setAuthor);
     }
 
     public FoDocumentBuilder withMetadataSubject(String subject) {
-        getMetadata().setSubject(subject);
-        return this;
+        return withMetadataValue(subject, FoMetadataPojo::setSubject, FoMetadataDom::setSubject);
     }
 
     public FoDocumentBuilder withMetadataKeywords(String keywords) {
-        getMetadata().setKeywords(keywords);
-        return this;
+        return withMetadataValue(keywords, FoMetadataPojo::setKeywords, FoMetadataDom::setKeywords);
     }
 
     public FoDocumentBuilder withMetadataCreator(String creator) {
-        getMetadata().setCreator(creator);
-        return this;
+        return withMetadataValue(creator, FoMetadataPojo::setCreator, FoMetadataDom::setCreator);
     }
 
     public FoDocumentBuilder withMetadataProducer(String producer) {
-        getMetadata().setProducer(producer);
-        return this;
+        return withMetadataValue(producer, FoMetadataPojo::setProducer, FoMetadataDom::setProducer);
     }
 
     // TODO! maybe round date (e.g. truncate to nearest minute/hour/day) - configurable?
     public FoDocumentBuilder withMetadataCreationDate(ZonedDateTime creationDate) {
-        getMetadata().setCreationDate(creationDate);
-        return this;
+        return withMetadataValue(creationDate, FoMetadataPojo::setCreationDate, FoMetadataDom::setCreationDate);
     }
 
     public FoDocumentBuilder withMetadataModificationDate(ZonedDateTime modificationDate) {
-        getMetadata().setModificationDate(modificationDate);
-        return this;
+        return withMetadataValue(modificationDate, FoMetadataPojo::setModificationDate, FoMetadataDom::setModificationDate);
     }
 
     public FoDocumentBuilder withMetadataCustomProperty(String key, String value) {
-        getMetadata().setCustomProperty(key, value);
-        return this;
+        return withMetadataValue(value, (pojo, v) -> pojo.setCustomProperty(key, v), (metadataDom, v) -> metadataDom.setCustomProperty(key, v));
     }
 
     public FoDocumentBuilder withVariableSubstitution(String variableName, String replacement) {
@@ -596,6 +1563,11 @@ public class FoDocumentBuilder {
     public FoDocumentBuilder withVariableSubstitution(String variableName, Function<FoDocument, String> replacementValueFunction) {
         if (variableSubstitutions == null) {
             variableSubstitutions = new HashMap<>();
+            isVariableSubstitutionsCopied = true;
+        }
+        else if (!isVariableSubstitutionsCopied) {
+            variableSubstitutions = new HashMap<>(variableSubstitutions);
+            isVariableSubstitutionsCopied = true;
         }
         variableSubstitutions.put(variableName, replacementValueFunction);
         return this;
@@ -641,8 +1613,8 @@ public class FoDocumentBuilder {
         private final Map<String, ElementModifier> styleModifiers;
         private final Map<String, Function<FoDocument, String>> variableSubstitutions;
         private final FoIndent indent;
-
-        private FoMetadata foMetadata;
+        // Created eagerly, so that concurrent calls to getMetadata() can't create several instances.
+        private final FoMetadata foMetadata;
 
         // FoTemplate constructor for buildTemplate()
         /* default */ Template(Document domDocument, Namespaces namespaces, FoIndent indent, List<URL> fontUrls, Map<String, ElementModifier> styleModifiers,
@@ -653,6 +1625,7 @@ public class FoDocumentBuilder {
             this.fontUrls = fontUrls;
             this.styleModifiers = styleModifiers == null ? null : Collections.unmodifiableMap(styleModifiers);
             this.variableSubstitutions = variableSubstitutions;
+            this.foMetadata = new FoMetadataDom(domDocument, namespaces);
         }
 
         // FoDocument constructor for build()
@@ -664,6 +1637,7 @@ public class FoDocumentBuilder {
             this.fontUrls = fontUrls;
             this.styleModifiers = null;
             this.variableSubstitutions = null;
+            this.foMetadata = new FoMetadataDom(domDocument, namespaces);
         }
 
         @Override
@@ -673,9 +1647,6 @@ public class FoDocumentBuilder {
 
         @Override
         public FoMetadata getMetadata() {
-            if (foMetadata == null) {
-                foMetadata = new FoMetadataDom(domDocument, namespaces);
-            }
             return foMetadata;
         }
 
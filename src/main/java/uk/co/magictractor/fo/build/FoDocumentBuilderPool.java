@@ -0,0 +1,123 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplate;
+
+/**
+ * <p>
+ * A thread safe pool of {@code FoDocumentBuilder}s for a template. Builders
+ * are reset before reuse, so the element stack and other per-builder state
+ * are not allocated for every document.
+ * </p>
+ * <p>
+ * A compiled template is used if the given template is not already
+ * compiled, since resetting a builder from a compiled template is cheaper.
+ * </p>
+ */
+public class FoDocumentBuilderPool {
+
+    private static final int DEFAULT_MAX_IDLE = 16;
+
+    private final CompiledFoTemplate template;
+    private final BlockingQueue<FoDocumentBuilder> idleBuilders;
+    // Weak so that builders which are never released are not retained.
+    private final Map<FoDocumentBuilder, Boolean> borrowedBuilders = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public FoDocumentBuilderPool(FoTemplate template) {
+        this(template, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle the maximum number of builders retained for reuse,
+     *        typically the number of threads building documents
+     */
+    public FoDocumentBuilderPool(FoTemplate template, int maxIdle) {
+        if (template == null) {
+            throw new IllegalArgumentException("template must not be null");
+        }
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("maxIdle must be positive");
+        }
+        this.template = CompiledFoTemplate.compile(template);
+        this.idleBuilders = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * Returns a builder ready to build a new document. The builder should be
+     * returned to the pool using {@link #release(FoDocumentBuilder)} once the
+     * document has been built.
+     */
+    public FoDocumentBuilder borrow() {
+        FoDocumentBuilder builder = idleBuilders.poll();
+        if (builder == null) {
+            builder = new FoDocumentBuilder(template);
+        }
+        else {
+            builder.reset(template);
+        }
+        borrowedBuilders.put(builder, Boolean.TRUE);
+
+        return builder;
+    }
+
+    /**
+     * Returns a builder to the pool. The builder must not be used after it
+     * has been released. If the pool is full the builder is discarded.
+     *
+     * @throws IllegalStateException if the builder was not borrowed from this
+     *         pool, or has already been released
+     */
+    public void release(FoDocumentBuilder builder) {
+        if (borrowedBuilders.remove(builder) == null) {
+            throw new IllegalStateException("builder was not borrowed from this pool or has already been released");
+        }
+        idleBuilders.offer(builder);
+    }
+
+    /**
+     * Borrows a builder, passes it to {@code content}, and then ends and
+     * builds the document and releases the builder.
+     */
+    public FoDocument build(Consumer<FoDocumentBuilder> content) {
+        FoDocumentBuilder builder = borrow();
+        try {
+            content.accept(builder);
+            builder.endDocument();
+            return builder.build();
+        }
+        catch (RuntimeException | Error e) {
+            builder.abort();
+            throw e;
+        }
+        finally {
+            release(builder);
+        }
+    }
+
+    /* default */ int idleCount() {
+        return idleBuilders.size();
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import com.google.common.base.MoreObjects;
+
+import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.compact.FoNodeStore;
+
+/**
+ * <p>
+ * Immutable content, such as legal boilerplate, which is built once and then
+ * appended to many documents using
+ * {@link FoDocumentBuilder#appendFragment(FoFragment, Map)}. Instances may be
+ * shared between threads.
+ * </p>
+ * <p>
+ * Text in the fragment may contain slots such as <code>${name}</code>, which
+ * are given values each time the fragment is appended.
+ * </p>
+ */
+public final class FoFragment {
+
+    private static final String SLOT_OPEN = "${";
+    private static final String SLOT_CLOSE = "}";
+
+    private final List<FoNodeStore> nodeStores;
+
+    private FoFragment(List<FoNodeStore> nodeStores) {
+        this.nodeStores = Collections.unmodifiableList(nodeStores);
+    }
+
+    /**
+     * Builds a fragment. The content is appended to a section builder (see
+     * {@link FoDocumentBuilder#newSection()}) for the given template, so may
+     * use the template's style modifiers.
+     *
+     * @throws IllegalArgumentException if the content has ids, including ids
+     *         set by {@code IdOverloadSetter} such as highlighters, because
+     *         ids would be duplicated when the fragment is appended more than
+     *         once
+     */
+    public static FoFragment build(FoTemplate template, Consumer<FoDocumentBuilder> content) {
+        FoDocumentBuilder parent = new FoDocumentBuilder(template);
+        parent.disableHeadingIndex();
+        FoDocumentBuilder section = parent.newSection();
+        content.accept(section);
+        Element wrapper = section.closeSection();
+        checkNoIds(wrapper);
+
+        List<FoNodeStore> nodeStores = new ArrayList<>();
+        for (Node child = wrapper.getFirstChild(); child != null; child = child.getNextSibling()) {
+            nodeStores.add(FoNodeStore.of(child));
+        }
+
+        return new FoFragment(nodeStores);
+    }
+
+    private static void checkNoIds(Element parent) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) child;
+                if (element.hasAttribute("id")) {
+                    throw new IllegalArgumentException("Fragments must not contain ids, found id \"" + element.getAttribute("id") + "\" on " + element.getNodeName());
+                }
+                checkNoIds(element);
+            }
+        }
+    }
+
+    /* default */ List<FoNodeStore> getNodeStores() {
+        return nodeStores;
+    }
+
+    /**
+     * Writes the fragment's nodes as SAX events, for use when a document is
+     * being written directly as SAX rather than using
+     * {@code FoDocumentBuilder}.
+     */
+    public void toSax(ContentHandler contentHandler, LexicalHandler lexicalHandler, Map<String, String> slotValues) throws SAXException {
+        UnaryOperator<String> textOperator = slotOperator(slotValues);
+        for (FoNodeStore nodeStore : nodeStores) {
+            nodeStore.toSax(contentHandler, lexicalHandler, textOperator);
+        }
+    }
+
+    // Returns null if there is nothing to replace, so that text is not copied unnecessarily.
+    /* default */ UnaryOperator<String> slotOperator(Map<String, String> slotValues) {
+        if (slotValues == null || slotValues.isEmpty()) {
+            return null;
+        }
+
+        return text -> replaceSlots(text, slotValues);
+    }
+
+    private static String replaceSlots(String text, Map<String, String> slotValues) {
+        int open = text.indexOf(SLOT_OPEN);
+        if (open < 0) {
+            return text;
+        }
+
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        int from = 0;
+        while (open >= 0) {
+            int close = text.indexOf(SLOT_CLOSE, open + SLOT_OPEN.length());
+            if (close < 0) {
+                break;
+            }
+            String value = slotValues.get(text.substring(open + SLOT_OPEN.length(), close));
+            if (value != null) {
+                result.append(text, from, open);
+                result.append(value);
+                from = close + SLOT_CLOSE.length();
+            }
+            open = text.indexOf(SLOT_OPEN, close + SLOT_CLOSE.length());
+        }
+        result.append(text, from, text.length());
+
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("topLevelNodes", nodeStores.size())
+                .toString();
+    }
+
+}
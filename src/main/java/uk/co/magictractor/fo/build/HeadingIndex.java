@@ -0,0 +1,186 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import uk.co.magictractor.fo.FoIds;
+import uk.co.magictractor.fo.modifiers.ElementModifier;
+import uk.co.magictractor.fo.namespace.Namespace;
+
+/**
+ * <p>
+ * Headings in the order that they appear in a document, maintained by
+ * {@code FoDocumentBuilder} as headings are started. This allows a
+ * {@code fo:bookmark-tree} and tables of contents to be created without
+ * traversing the document.
+ * </p>
+ * <p>
+ * Titles are read from the heading Elements when they are used, so content
+ * appended to a heading after it was started is included.
+ * </p>
+ */
+/* default */ final class HeadingIndex {
+
+    private static final String ID_PREFIX = "heading-";
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Assigns an id to the heading, unless it already has one, and returns
+     * the id. Sections share their parent's {@code FoIds}, so ids are unique
+     * in the document.
+     */
+    /* default */ String assignId(Element heading, FoIds ids) {
+        String id = heading.getAttribute("id");
+        if (id.isEmpty()) {
+            id = ids.allocate(ID_PREFIX);
+            heading.setAttribute("id", id);
+            ids.register(heading);
+        }
+        return id;
+    }
+
+    /* default */ void add(int level, Element heading, String id) {
+        entries.add(new Entry(level, heading, id));
+    }
+
+    // Used when a section is appended. Sections are appended at the end of the document, so are also indexed at the end.
+    /* default */ void addAll(HeadingIndex sectionIndex) {
+        entries.addAll(sectionIndex.entries);
+        sectionIndex.entries.clear();
+    }
+
+    /* default */ boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Adds a bookmark for each heading with a level no greater than
+     * {@code maxLevel}, nested according to their levels, to the
+     * {@code fo:bookmark-tree}, which is created before the first
+     * page-sequence if it does not already exist and there are bookmarks.
+     */
+    /* default */ void appendBookmarks(Element root, Namespace fo, int maxLevel) {
+        Document document = root.getOwnerDocument();
+
+        // parents[level] is the bookmark which headings of the next level are added to.
+        // fo:bookmark-tree must contain at least one bookmark, so it is created with the first bookmark.
+        Element[] parents = new Element[maxLevel + 1];
+        int parentLevel = 0;
+        for (Entry entry : entries) {
+            if (entry.level > maxLevel) {
+                continue;
+            }
+            if (parents[0] == null) {
+                parents[0] = findOrCreateBookmarkTree(root, fo);
+            }
+
+            Element bookmark = document.createElementNS(fo.getUri(), fo.qualifiedName("bookmark"));
+            bookmark.setAttribute("internal-destination", entry.id);
+            Element bookmarkTitle = document.createElementNS(fo.getUri(), fo.qualifiedName("bookmark-title"));
+            bookmarkTitle.setTextContent(entry.title());
+            bookmark.appendChild(bookmarkTitle);
+
+            // A heading may skip levels, such as h3 following h1, in which case it is nested under the closest preceding heading.
+            int level = Math.min(entry.level, parentLevel + 1);
+            parents[level - 1].appendChild(bookmark);
+            parents[level] = bookmark;
+            parentLevel = level;
+        }
+    }
+
+    private Element findOrCreateBookmarkTree(Element root, Namespace fo) {
+        Node firstPageSequence = null;
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String localName = child.getLocalName();
+            if ("bookmark-tree".equals(localName)) {
+                return (Element) child;
+            }
+            if ("page-sequence".equals(localName) || "page-sequence-wrapper".equals(localName)) {
+                firstPageSequence = child;
+                break;
+            }
+        }
+
+        Element bookmarkTree = root.getOwnerDocument().createElementNS(fo.getUri(), fo.qualifiedName("bookmark-tree"));
+        root.insertBefore(bookmarkTree, firstPageSequence);
+
+        return bookmarkTree;
+    }
+
+    /**
+     * Adds an entry to {@code tableOfContents} for each heading with a level
+     * no greater than {@code maxLevel}. Each entry links to the heading and
+     * cites its page number.
+     */
+    /* default */ void appendTableOfContents(Element tableOfContents, Namespace fo, int maxLevel, ElementModifier entryModifier) {
+        Document document = tableOfContents.getOwnerDocument();
+        for (Entry entry : entries) {
+            if (entry.level > maxLevel) {
+                continue;
+            }
+
+            Element tocEntry = document.createElementNS(fo.getUri(), fo.qualifiedName("block"));
+            if (entryModifier != null) {
+                entryModifier.modify(tocEntry);
+            }
+            if (entry.level > 1) {
+                tocEntry.setAttribute("start-indent", (entry.level - 1) * 12 + "pt");
+            }
+
+            Element link = document.createElementNS(fo.getUri(), fo.qualifiedName("basic-link"));
+            link.setAttribute("internal-destination", entry.id);
+            link.setTextContent(entry.title());
+            tocEntry.appendChild(link);
+
+            Element leader = document.createElementNS(fo.getUri(), fo.qualifiedName("leader"));
+            leader.setAttribute("leader-pattern", "dots");
+            tocEntry.appendChild(leader);
+
+            Element pageNumberCitation = document.createElementNS(fo.getUri(), fo.qualifiedName("page-number-citation"));
+            pageNumberCitation.setAttribute("ref-id", entry.id);
+            tocEntry.appendChild(pageNumberCitation);
+
+            tableOfContents.appendChild(tocEntry);
+        }
+    }
+
+    private static final class Entry {
+        private final int level;
+        private final Element heading;
+        private final String id;
+
+        /* default */ Entry(int level, Element heading, String id) {
+            this.level = level;
+            this.heading = heading;
+            this.id = id;
+        }
+
+        /* default */ String title() {
+            return heading.getTextContent().trim();
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoIds;
+import uk.co.magictractor.fo.compact.FoNodeStore;
+import uk.co.magictractor.fo.handler.filter.TextSubstitutionFilter;
+import uk.co.magictractor.fo.writer.FoWriter;
+import uk.co.magictractor.fo.writer.FoWriterStream;
+
+/**
+ * <p>
+ * Sends completed page-sequences from {@code FoDocumentBuilder} to a
+ * {@code FoWriter} so that they can be removed from the DOM.
+ * </p>
+ * <p>
+ * The stream is opened when the first page-sequence is flushed. At that point
+ * the content of fo:root preceding the page-sequences, including the metadata
+ * in fo:declarations, is written so must be complete.
+ * </p>
+ */
+/* default */ final class PageSequenceFlusher {
+
+    private static final String NAMESPACE_URI_XMLNS = "http://www.w3.org/2000/xmlns/";
+
+    private final FoWriter writer;
+    private final FoDocument document;
+    private final Map<String, Function<FoDocument, String>> variableSubstitutions;
+
+    private FoWriterStream stream;
+    // The stream's handlers, or a filter which substitutes variables before passing events on to them.
+    private ContentHandler contentHandler;
+    private LexicalHandler lexicalHandler;
+    private boolean hasFlushed;
+    private boolean isClosed;
+
+    /* default */ PageSequenceFlusher(FoWriter writer, FoDocument document, Map<String, Function<FoDocument, String>> variableSubstitutions) {
+        this.writer = writer;
+        this.document = document;
+        this.variableSubstitutions = variableSubstitutions;
+    }
+
+    /**
+     * Writes the page-sequence and removes it from the DOM. The stream is
+     * aborted if the page-sequence cannot be written.
+     */
+    /* default */ void flush(Element pageSequence) {
+        Element root = (Element) pageSequence.getParentNode();
+        try {
+            ensureStarted(root);
+            write(pageSequence);
+        }
+        catch (SAXException e) {
+            abort();
+            throw new IllegalStateException(e);
+        }
+        catch (RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+        root.removeChild(pageSequence);
+        // Keep the ids for checking references, but allow the page-sequence to be collected.
+        FoIds.of(root.getOwnerDocument()).release(pageSequence);
+        hasFlushed = true;
+    }
+
+    /**
+     * Writes the remaining content of the document and closes the stream. The
+     * content before the first page-sequence and the final page-sequence are
+     * retained in the DOM. The stream is aborted rather than closed if the
+     * content cannot be written.
+     */
+    /* default */ void finish(Element root) {
+        boolean isComplete = false;
+        try {
+            ensureStarted(root);
+
+            Node child = firstPageSequence(root);
+            while (child != null) {
+                // The limit may have been reached at the last block, leaving an empty page-sequence which is not valid.
+                if (!hasFlushed || !isPageSequence(child) || hasBlocks((Element) child)) {
+                    write(child);
+                }
+                child = child.getNextSibling();
+            }
+
+            contentHandler.endElement(root.getNamespaceURI(), root.getLocalName(), root.getNodeName());
+            endPrefixMappings(root);
+            contentHandler.endDocument();
+            isComplete = true;
+        }
+        catch (SAXException e) {
+            throw new IllegalStateException(e);
+        }
+        finally {
+            if (isComplete) {
+                close();
+            }
+            else {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Abandons the document, so that the writer releases its resources and
+     * {@code FoWriterFontDetector} is reset. Does nothing if the stream has
+     * not been opened or has already been closed.
+     */
+    /* default */ void abort() {
+        if (stream != null && !isClosed) {
+            isClosed = true;
+            stream.abort();
+        }
+    }
+
+    private void close() {
+        if (stream != null && !isClosed) {
+            isClosed = true;
+            stream.close();
+        }
+    }
+
+    private void ensureStarted(Element root) throws SAXException {
+        if (isClosed) {
+            throw new IllegalStateException("The stream has already been closed");
+        }
+        if (stream != null) {
+            return;
+        }
+
+        stream = writer.openStream(document);
+        if (variableSubstitutions != null) {
+            TextSubstitutionFilter filter = new TextSubstitutionFilter(stream.getContentHandler(), document, variableSubstitutions);
+            contentHandler = filter;
+            lexicalHandler = filter;
+        }
+        else {
+            contentHandler = stream.getContentHandler();
+            lexicalHandler = stream.getLexicalHandler();
+        }
+
+        contentHandler.startDocument();
+        startRoot(root);
+        Node firstPageSequence = firstPageSequence(root);
+        for (Node child = root.getFirstChild(); child != firstPageSequence; child = child.getNextSibling()) {
+            write(child);
+        }
+    }
+
+    private void startRoot(Element root) throws SAXException {
+        AttributesImpl attributes = new AttributesImpl();
+        boolean isPrefixDeclared = root.getPrefix() == null;
+        NamedNodeMap domAttributes = root.getAttributes();
+        for (int i = 0; i < domAttributes.getLength(); i++) {
+            Attr attribute = (Attr) domAttributes.item(i);
+            if (NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                String prefix = attribute.getPrefix() == null ? "" : attribute.getLocalName();
+                contentHandler.startPrefixMapping(prefix, attribute.getValue());
+                isPrefixDeclared |= prefix.equals(root.getPrefix());
+                attributes.addAttribute(NAMESPACE_URI_XMLNS, attribute.getLocalName(), attribute.getName(), "CDATA", attribute.getValue());
+            }
+        }
+        if (!isPrefixDeclared) {
+            contentHandler.startPrefixMapping(root.getPrefix(), root.getNamespaceURI());
+            attributes.addAttribute(NAMESPACE_URI_XMLNS, root.getPrefix(), "xmlns:" + root.getPrefix(), "CDATA", root.getNamespaceURI());
+        }
+        // Namespace declarations first, consistent with FoNodeStore.
+        for (int i = 0; i < domAttributes.getLength(); i++) {
+            Attr attribute = (Attr) domAttributes.item(i);
+            if (!NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                attributes.addAttribute(nullToEmpty(attribute.getNamespaceURI()), attribute.getLocalName(), attribute.getName(), "CDATA", attribute.getValue());
+            }
+        }
+
+        contentHandler.startElement(root.getNamespaceURI(), root.getLocalName(), root.getNodeName(), attributes);
+    }
+
+    private void endPrefixMappings(Element root) throws SAXException {
+        boolean isPrefixDeclared = root.getPrefix() == null;
+        NamedNodeMap domAttributes = root.getAttributes();
+        for (int i = 0; i < domAttributes.getLength(); i++) {
+            Attr attribute = (Attr) domAttributes.item(i);
+            if (NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                String prefix = attribute.getPrefix() == null ? "" : attribute.getLocalName();
+                contentHandler.endPrefixMapping(prefix);
+                isPrefixDeclared |= prefix.equals(root.getPrefix());
+            }
+        }
+        if (!isPrefixDeclared) {
+            contentHandler.endPrefixMapping(root.getPrefix());
+        }
+    }
+
+    private void write(Node node) throws SAXException {
+        FoNodeStore.of(node).toSax(contentHandler, lexicalHandler);
+    }
+
+    private Node firstPageSequence(Element root) {
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (isPageSequence(child)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasBlocks(Element pageSequence) {
+        for (Node child = pageSequence.getLastChild(); child != null; child = child.getPreviousSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && "flow".equals(child.getLocalName())) {
+                for (Node flowChild = child.getFirstChild(); flowChild != null; flowChild = flowChild.getNextSibling()) {
+                    if (flowChild.getNodeType() == Node.ELEMENT_NODE) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /* default */ static boolean isPageSequence(Node node) {
+        return node.getNodeType() == Node.ELEMENT_NODE && "page-sequence".equals(node.getLocalName());
+    }
+
+    private static String nullToEmpty(String uri) {
+        return uri == null ? "" : uri;
+    }
+
+}
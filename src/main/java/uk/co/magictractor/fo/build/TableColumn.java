@@ -0,0 +1,88 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import java.util.function.Function;
+
+import com.google.common.base.MoreObjects;
+
+import uk.co.magictractor.fo.modifiers.ElementModifier;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
+
+/**
+ * A column for {@code FoDocumentBuilder.appendTable()}.
+ *
+ * @param <R> the row type
+ */
+public class TableColumn<R> {
+
+    private final String header;
+    private final Function<R, String> valueFunction;
+    private String width;
+    private ElementModifier cellModifier = ElementModifiers.noOp();
+
+    public TableColumn(String header, Function<R, String> valueFunction) {
+        if (valueFunction == null) {
+            throw new IllegalArgumentException("valueFunction must not be null");
+        }
+        this.header = header;
+        this.valueFunction = valueFunction;
+    }
+
+    /**
+     * Sets the {@code column-width}, such as "30mm" or
+     * "proportional-column-width(2)". If not set the width is estimated from
+     * the lengths of the header and the first rows of the table.
+     */
+    public TableColumn<R> withWidth(String width) {
+        this.width = width;
+        return this;
+    }
+
+    /**
+     * Modifies the {@code fo:block} within each body cell in this column, for
+     * example to right align numbers.
+     */
+    public TableColumn<R> withCellModifier(ElementModifier cellModifier) {
+        this.cellModifier = cellModifier;
+        return this;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public String getWidth() {
+        return width;
+    }
+
+    /* default */ ElementModifier getCellModifier() {
+        return cellModifier;
+    }
+
+    /* default */ String valueOf(R row) {
+        return valueFunction.apply(row);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("header", header)
+                .add("width", width)
+                .toString();
+    }
+
+}
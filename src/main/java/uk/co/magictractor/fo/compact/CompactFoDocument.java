@@ -0,0 +1,151 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.compact;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.google.common.base.MoreObjects;
+
+import uk.co.magictractor.fo.DomUtil;
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoMetadata;
+import uk.co.magictractor.fo.FoMetadataDom;
+import uk.co.magictractor.fo.FoMetadataPojo;
+import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.namespace.DefaultNamespaces;
+import uk.co.magictractor.fo.namespace.Namespaces;
+
+/**
+ * <p>
+ * {@code FoDocument} backed by a {@link FoNodeStore} rather than a DOM.
+ * Usually created using {@code FoDocumentBuilder.buildCompact()}, or decoded
+ * by {@link FoBinaryCodec}.
+ * </p>
+ * <p>
+ * {@code FoWriter} writes the nodes directly as SAX events.
+ * {@link #getDomDocument()} creates a new DOM on each call, so changes to it
+ * are not reflected in the output.
+ * </p>
+ * <p>
+ * Instances are immutable and may be written concurrently by several
+ * threads, see {@link FoDocument#freeze()}.
+ * </p>
+ */
+public class CompactFoDocument implements FoDocument {
+
+    private final FoNodeStore nodeStore;
+    private final FoMetadataPojo metadata;
+    private final List<URL> fontUrls;
+
+    public CompactFoDocument(Document domDocument, Namespaces namespaces, List<URL> fontUrls) {
+        this.nodeStore = FoNodeStore.of(domDocument);
+        // Snapshot so that the DOM is not needed for metadata.
+        this.metadata = snapshotMetadata(domDocument, namespaces);
+        this.fontUrls = fontUrls == null ? null : Collections.unmodifiableList(new ArrayList<>(fontUrls));
+    }
+
+    /* default */ CompactFoDocument(FoNodeStore nodeStore, FoMetadataPojo metadata, List<URL> fontUrls) {
+        this.nodeStore = nodeStore;
+        this.metadata = metadata;
+        this.fontUrls = fontUrls == null ? null : Collections.unmodifiableList(new ArrayList<>(fontUrls));
+    }
+
+    /**
+     * Returns the document if it is already a {@code CompactFoDocument},
+     * otherwise a compact copy of it.
+     */
+    public static CompactFoDocument of(FoDocument document) {
+        if (document instanceof CompactFoDocument) {
+            return (CompactFoDocument) document;
+        }
+
+        // Only templates know their namespaces. Metadata elements are found by local name, so the defaults are good enough otherwise.
+        Namespaces namespaces = document instanceof FoTemplate ? ((FoTemplate) document).getNamespaces() : DefaultNamespaces.get();
+
+        return new CompactFoDocument(document.getDomDocument(), namespaces, document.getFontUrls());
+    }
+
+    private static FoMetadataPojo snapshotMetadata(Document domDocument, Namespaces namespaces) {
+        FoMetadataDom source = new FoMetadataDom(domDocument, namespaces);
+        FoMetadataPojo metadata = new FoMetadataPojo();
+        metadata.setTitle(source.getTitle());
+        metadata.setAuthor(source.getAuthor());
+        metadata.setSubject(source.getSubject());
+        metadata.setKeywords(source.getKeywords());
+        metadata.setCreator(source.getCreator());
+        metadata.setProducer(source.getProducer());
+        metadata.setCreationDate(source.getCreationDate());
+        metadata.setModificationDate(source.getModificationDate());
+
+        // FoMetadata does not list custom property keys, so find them in the DOM.
+        Element declarations = DomUtil.findFoDeclarationsNullable(domDocument);
+        Element foxInfo = declarations == null ? null : DomUtil.findChildNullable(declarations, namespaces.fox().qName("info"));
+        if (foxInfo != null) {
+            for (Node child = foxInfo.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE && "name".equals(child.getLocalName())) {
+                    Element property = (Element) child;
+                    metadata.setCustomProperty(property.getAttribute("key"), property.getTextContent());
+                }
+            }
+        }
+
+        return metadata;
+    }
+
+    public FoNodeStore getNodeStore() {
+        return nodeStore;
+    }
+
+    @Override
+    public Document getDomDocument() {
+        return nodeStore.toDomDocument();
+    }
+
+    @Override
+    public FoMetadata getMetadata() {
+        return metadata;
+    }
+
+    /* default */ FoMetadataPojo getMetadataPojo() {
+        return metadata;
+    }
+
+    @Override
+    public List<URL> getFontUrls() {
+        return fontUrls;
+    }
+
+    @Override
+    public FoDocument freeze() {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("nodeCount", nodeStore.nodeCount())
+                .add("title", metadata.getTitle())
+                .toString();
+    }
+
+}
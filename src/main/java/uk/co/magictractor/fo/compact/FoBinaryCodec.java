@@ -0,0 +1,369 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.compact;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteStreams;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoMetadataPojo;
+
+/**
+ * <p>
+ * Compact binary encoding of a {@code FoDocument}, so that documents may be
+ * cached, or built on one node and written on another, without serializing
+ * and re-parsing XML.
+ * </p>
+ * <p>
+ * The encoding mirrors {@link FoNodeStore}. Names, attribute values,
+ * metadata and font URLs are held once in a string table and referenced by
+ * index, integers are written as varints, and all text is written as a
+ * single UTF-8 block. Decoding creates a {@link CompactFoDocument}, which
+ * {@code FoWriter} writes directly as SAX events.
+ * </p>
+ * <p>
+ * The format is only intended to be read by the same version of this
+ * library that wrote it.
+ * </p>
+ */
+public final class FoBinaryCodec {
+
+    private static final byte[] MAGIC = { 'F', 'O', 'B' };
+    private static final int VERSION = 1;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_ZONED_DATE_TIME;
+
+    private FoBinaryCodec() {
+    }
+
+    public static byte[] encode(FoDocument document) {
+        return encoder(document).toByteArray();
+    }
+
+    public static void encode(FoDocument document, OutputStream out) {
+        try {
+            encoder(document).writeTo(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Encoder encoder(FoDocument document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document must not be null");
+        }
+
+        // Documents backed by a DOM are compacted first, the encoding mirrors FoNodeStore.
+        CompactFoDocument compactDocument = CompactFoDocument.of(document);
+        Encoder encoder = new Encoder();
+        compactDocument.getNodeStore().encode(encoder);
+        encodeMetadata(compactDocument.getMetadataPojo(), encoder);
+        encodeFontUrls(compactDocument.getFontUrls(), encoder);
+
+        return encoder;
+    }
+
+    private static void encodeMetadata(FoMetadataPojo metadata, Encoder encoder) {
+        encoder.writeString(metadata.getTitle());
+        encoder.writeString(metadata.getAuthor());
+        encoder.writeString(metadata.getSubject());
+        encoder.writeString(metadata.getKeywords());
+        encoder.writeString(metadata.getCreator());
+        encoder.writeString(metadata.getProducer());
+        encoder.writeString(formatDate(metadata.getCreationDate()));
+        encoder.writeString(formatDate(metadata.getModificationDate()));
+
+        Map<String, String> customProperties = metadata.getCustomProperties();
+        encoder.writeVarint(customProperties.size());
+        for (Map.Entry<String, String> customProperty : customProperties.entrySet()) {
+            encoder.writeString(customProperty.getKey());
+            encoder.writeString(customProperty.getValue());
+        }
+    }
+
+    private static void encodeFontUrls(List<URL> fontUrls, Encoder encoder) {
+        // Zero for null, otherwise the number of URLs plus one.
+        if (fontUrls == null) {
+            encoder.writeVarint(0);
+            return;
+        }
+        encoder.writeVarint(fontUrls.size() + 1);
+        for (URL fontUrl : fontUrls) {
+            encoder.writeString(fontUrl.toExternalForm());
+        }
+    }
+
+    private static String formatDate(ZonedDateTime date) {
+        return date == null ? null : DATE_FORMATTER.format(date);
+    }
+
+    public static CompactFoDocument decode(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Bytes must not be null");
+        }
+
+        Decoder decoder = new Decoder(bytes);
+        FoNodeStore nodeStore = FoNodeStore.decode(decoder);
+        FoMetadataPojo metadata = decodeMetadata(decoder);
+        List<URL> fontUrls = decodeFontUrls(decoder);
+        decoder.checkFinished();
+
+        return new CompactFoDocument(nodeStore, metadata, fontUrls);
+    }
+
+    public static CompactFoDocument decode(InputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException("InputStream must not be null");
+        }
+
+        try {
+            return decode(ByteStreams.toByteArray(in));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FoMetadataPojo decodeMetadata(Decoder decoder) {
+        FoMetadataPojo metadata = new FoMetadataPojo();
+        metadata.setTitle(decoder.readString());
+        metadata.setAuthor(decoder.readString());
+        metadata.setSubject(decoder.readString());
+        metadata.setKeywords(decoder.readString());
+        metadata.setCreator(decoder.readString());
+        metadata.setProducer(decoder.readString());
+        metadata.setCreationDate(parseDate(decoder.readString()));
+        metadata.setModificationDate(parseDate(decoder.readString()));
+
+        int customPropertyCount = decoder.readCount(2);
+        for (int i = 0; i < customPropertyCount; i++) {
+            metadata.setCustomProperty(decoder.readString(), decoder.readString());
+        }
+
+        return metadata;
+    }
+
+    private static List<URL> decodeFontUrls(Decoder decoder) {
+        int count = decoder.readCount(1);
+        if (count == 0) {
+            return null;
+        }
+        List<URL> fontUrls = new ArrayList<>(count - 1);
+        for (int i = 1; i < count; i++) {
+            try {
+                fontUrls.add(new URL(decoder.readString()));
+            }
+            catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return fontUrls;
+    }
+
+    private static ZonedDateTime parseDate(String date) {
+        return date == null ? null : ZonedDateTime.parse(date, DATE_FORMATTER);
+    }
+
+    /**
+     * Writes the body to a buffer while building the string table, which is
+     * written before the body.
+     */
+    /* default */ static final class Encoder {
+
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        private byte[] buffer = new byte[4096];
+        private int length;
+
+        /* default */ void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[length++] = (byte) value;
+        }
+
+        /** Non-negative values only, seven bits per byte, least significant first. */
+        /* default */ void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        /** Writes an index into the string table, zero for null. */
+        /* default */ void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                stringIndexes.put(value, index);
+            }
+            writeVarint(index + 1);
+        }
+
+        /** Writes text inline rather than in the string table. */
+        /* default */ void writeText(char[] text) {
+            byte[] bytes = new String(text).getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (length + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+            }
+        }
+
+        /* default */ byte[] toByteArray() {
+            Encoder header = header();
+            byte[] bytes = Arrays.copyOf(header.buffer, header.length + length);
+            System.arraycopy(buffer, 0, bytes, header.length, length);
+            return bytes;
+        }
+
+        /* default */ void writeTo(OutputStream out) throws IOException {
+            Encoder header = header();
+            out.write(header.buffer, 0, header.length);
+            out.write(buffer, 0, length);
+        }
+
+        private Encoder header() {
+            Encoder header = new Encoder();
+            for (byte b : MAGIC) {
+                header.writeByte(b);
+            }
+            header.writeVarint(VERSION);
+            header.writeVarint(strings.size());
+            for (String string : strings) {
+                header.writeText(string.toCharArray());
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Reads the header and string table on construction, then the body.
+     */
+    /* default */ static final class Decoder {
+
+        private final byte[] bytes;
+        private int position;
+        private final String[] strings;
+
+        private Decoder(byte[] bytes) {
+            this.bytes = bytes;
+            for (byte b : MAGIC) {
+                if (readByte() != b) {
+                    throw new IllegalArgumentException("Not an encoded FoDocument");
+                }
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported encoding version " + version);
+            }
+
+            strings = new String[readCount(1)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readText();
+            }
+        }
+
+        /* default */ int readByte() {
+            if (position == bytes.length) {
+                throw new IllegalArgumentException("Unexpected end of encoded FoDocument");
+            }
+            return bytes[position++];
+        }
+
+        /* default */ int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at " + (position - 1));
+        }
+
+        /**
+         * Reads a count or length, where each item takes at least
+         * {@code minBytesPerItem} bytes of the remaining data. Corrupt counts
+         * are rejected before arrays are allocated for the items.
+         */
+        /* default */ int readCount(int minBytesPerItem) {
+            int start = position;
+            int count = readVarint();
+            if (count < 0 || (long) count * minBytesPerItem > remaining()) {
+                throw new IllegalArgumentException("Invalid count " + count + " at " + start);
+            }
+            return count;
+        }
+
+        /* default */ int remaining() {
+            return bytes.length - position;
+        }
+
+        /* default */ String readString() {
+            int index = readVarint();
+            if (index == 0) {
+                return null;
+            }
+            if (index < 0 || index > strings.length) {
+                throw new IllegalArgumentException("Invalid string index " + index);
+            }
+            return strings[index - 1];
+        }
+
+        /* default */ String readText() {
+            int byteCount = readCount(1);
+            String text = new String(bytes, position, byteCount, StandardCharsets.UTF_8);
+            position += byteCount;
+            return text;
+        }
+
+        private void checkFinished() {
+            if (position != bytes.length) {
+                throw new IllegalArgumentException("Unexpected data after encoded FoDocument");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,717 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.compact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import javax.xml.XMLConstants;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Comment;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import uk.co.magictractor.fo.DomUtil;
+import uk.co.magictractor.fo.visitor.NodeVisitor;
+
+/**
+ * <p>
+ * Immutable, compact storage for the nodes of a generated document.
+ * </p>
+ * <p>
+ * Nodes are held in document order in parallel primitive arrays rather than
+ * as DOM objects with parent, sibling and owner pointers. Element and
+ * attribute names are interned into a single table, attribute values are
+ * pooled, and all text is held in a single {@code char[]}. For text heavy
+ * documents this uses several times less heap than the DOM it was created
+ * from.
+ * </p>
+ * <p>
+ * The nodes are written directly as SAX events by {@link #toSax}. A DOM
+ * may be recreated using {@link #toDomDocument()}, but that is only expected
+ * to be required for testing and diagnostics.
+ * </p>
+ */
+public final class FoNodeStore {
+
+    private static final String NAMESPACE_URI_XMLNS = "http://www.w3.org/2000/xmlns/";
+    private static final String CDATA = "CDATA";
+
+    /** Node.ELEMENT_NODE, Node.TEXT_NODE or Node.COMMENT_NODE. */
+    private final byte[] nodeTypes;
+    /** Elements: name index. Text and comments: offset into text. */
+    private final int[] nodeValues;
+    /**
+     * Elements: index of the node following the Element's last descendant.
+     * Text and comments: length of the text.
+     */
+    private final int[] nodeEnds;
+    /** Elements: offset into attributes, or -1. Unused for other nodes. */
+    private final int[] nodeAttributes;
+    private final int nodeCount;
+
+    private final String[] nameUris;
+    private final String[] nameLocalNames;
+    private final String[] nameQNames;
+
+    /** Attribute count followed by name and value index pairs. */
+    private final int[] attributes;
+    private final String[] attributeValues;
+
+    private final char[] text;
+
+    /** False for a store created from an Element. */
+    private final boolean isDocument;
+
+    private FoNodeStore(Compactor compactor, boolean isDocument) {
+        this.isDocument = isDocument;
+        nodeCount = compactor.nodeCount;
+        nodeTypes = Arrays.copyOf(compactor.nodeTypes, nodeCount);
+        nodeValues = Arrays.copyOf(compactor.nodeValues, nodeCount);
+        nodeEnds = Arrays.copyOf(compactor.nodeEnds, nodeCount);
+        nodeAttributes = Arrays.copyOf(compactor.nodeAttributes, nodeCount);
+
+        int nameCount = compactor.names.size();
+        nameUris = new String[nameCount];
+        nameLocalNames = new String[nameCount];
+        nameQNames = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            String[] name = compactor.names.get(i);
+            nameUris[i] = name[0];
+            nameLocalNames[i] = name[1];
+            nameQNames[i] = name[2];
+        }
+
+        attributes = Arrays.copyOf(compactor.attributes, compactor.attributesLength);
+        attributeValues = compactor.attributeValues.toArray(new String[0]);
+        text = compactor.text.toString().toCharArray();
+    }
+
+    private FoNodeStore(byte[] nodeTypes, int[] nodeValues, int[] nodeEnds, int[] nodeAttributes, String[] nameUris, String[] nameLocalNames,
+            String[] nameQNames, int[] attributes, String[] attributeValues, char[] text, boolean isDocument) {
+        this.isDocument = isDocument;
+        this.nodeCount = nodeTypes.length;
+        this.nodeTypes = nodeTypes;
+        this.nodeValues = nodeValues;
+        this.nodeEnds = nodeEnds;
+        this.nodeAttributes = nodeAttributes;
+        this.nameUris = nameUris;
+        this.nameLocalNames = nameLocalNames;
+        this.nameQNames = nameQNames;
+        this.attributes = attributes;
+        this.attributeValues = attributeValues;
+        this.text = text;
+    }
+
+    /**
+     * Copies the nodes from the given DOM. Only elements, attributes, text and
+     * comments are retained, which is everything generated by
+     * {@code FoDocumentBuilder}.
+     */
+    public static FoNodeStore of(Document domDocument) {
+        if (domDocument == null) {
+            throw new IllegalArgumentException("Document must not be null");
+        }
+        return new FoNodeStore(NodeVisitor.traverse(domDocument, new Compactor()), true);
+    }
+
+    /**
+     * <p>
+     * Copies the given node and its descendants, which may then be written as
+     * part of a larger document. See {@link #of(Document)}.
+     * </p>
+     * <p>
+     * The namespaces of ancestor Elements, and their namespace declarations,
+     * are assumed to be in scope when the nodes are written.
+     * </p>
+     */
+    public static FoNodeStore of(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("Node must not be null");
+        }
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            return of((Document) node);
+        }
+
+        Compactor compactor = new Compactor();
+        compactor.bindAncestors(node.getParentNode());
+        return new FoNodeStore(NodeVisitor.traverse(node, compactor), false);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int textLength() {
+        return text.length;
+    }
+
+    /**
+     * Writes the nodes as SAX events. {@code startDocument()} and
+     * {@code endDocument()} are included if this store was created from a
+     * {@code Document}.
+     *
+     * @param lexicalHandler receives comments, may be null
+     */
+    public void toSax(ContentHandler contentHandler, LexicalHandler lexicalHandler) throws SAXException {
+        toSax(contentHandler, lexicalHandler, null);
+    }
+
+    /**
+     * As {@link #toSax(ContentHandler, LexicalHandler)}, with text modified by
+     * the given operator.
+     *
+     * @param textOperator applied to text before calling
+     *        {@code characters()}, may be null
+     */
+    public void toSax(ContentHandler contentHandler, LexicalHandler lexicalHandler, UnaryOperator<String> textOperator) throws SAXException {
+        AttributesImpl saxAttributes = new AttributesImpl();
+        int[] openElements = new int[16];
+        int depth = 0;
+
+        if (isDocument) {
+            contentHandler.startDocument();
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            while (depth > 0 && nodeEnds[openElements[depth - 1]] == i) {
+                endElement(contentHandler, openElements[--depth]);
+            }
+
+            switch (nodeTypes[i]) {
+                case Node.ELEMENT_NODE:
+                    startElement(contentHandler, i, saxAttributes);
+                    if (depth == openElements.length) {
+                        openElements = Arrays.copyOf(openElements, depth * 2);
+                    }
+                    openElements[depth++] = i;
+                    break;
+                case Node.TEXT_NODE:
+                    if (textOperator == null) {
+                        contentHandler.characters(text, nodeValues[i], nodeEnds[i]);
+                    }
+                    else {
+                        char[] chars = textOperator.apply(new String(text, nodeValues[i], nodeEnds[i])).toCharArray();
+                        contentHandler.characters(chars, 0, chars.length);
+                    }
+                    break;
+                case Node.COMMENT_NODE:
+                    if (lexicalHandler != null) {
+                        lexicalHandler.comment(text, nodeValues[i], nodeEnds[i]);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected node type " + nodeTypes[i]);
+            }
+        }
+        while (depth > 0) {
+            endElement(contentHandler, openElements[--depth]);
+        }
+        if (isDocument) {
+            contentHandler.endDocument();
+        }
+    }
+
+    private void startElement(ContentHandler contentHandler, int node, AttributesImpl saxAttributes) throws SAXException {
+        saxAttributes.clear();
+        int attributeOffset = nodeAttributes[node];
+        if (attributeOffset >= 0) {
+            int end = attributeOffset + 1 + attributes[attributeOffset] * 2;
+            for (int a = attributeOffset + 1; a < end; a += 2) {
+                int name = attributes[a];
+                String value = attributeValues[attributes[a + 1]];
+                if (NAMESPACE_URI_XMLNS.equals(nameUris[name])) {
+                    String prefix = "xmlns".equals(nameQNames[name]) ? "" : nameLocalNames[name];
+                    contentHandler.startPrefixMapping(prefix, value);
+                }
+                saxAttributes.addAttribute(nameUris[name], nameLocalNames[name], nameQNames[name], CDATA, value);
+            }
+        }
+
+        int name = nodeValues[node];
+        contentHandler.startElement(nameUris[name], nameLocalNames[name], nameQNames[name], saxAttributes);
+    }
+
+    private void endElement(ContentHandler contentHandler, int node) throws SAXException {
+        int name = nodeValues[node];
+        contentHandler.endElement(nameUris[name], nameLocalNames[name], nameQNames[name]);
+
+        int attributeOffset = nodeAttributes[node];
+        if (attributeOffset >= 0) {
+            int end = attributeOffset + 1 + attributes[attributeOffset] * 2;
+            for (int a = attributeOffset + 1; a < end; a += 2) {
+                int attributeName = attributes[a];
+                if (NAMESPACE_URI_XMLNS.equals(nameUris[attributeName])) {
+                    String prefix = "xmlns".equals(nameQNames[attributeName]) ? "" : nameLocalNames[attributeName];
+                    contentHandler.endPrefixMapping(prefix);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new DOM containing the nodes. Changes to the DOM are not
+     * reflected in this store.
+     */
+    public Document toDomDocument() {
+        if (!isDocument) {
+            throw new IllegalStateException("A DOM can only be created if this store was created from a Document");
+        }
+
+        Document domDocument = DomUtil.newDocument();
+        appendNodes(domDocument, domDocument, null);
+
+        return domDocument;
+    }
+
+    /**
+     * <p>
+     * Creates the nodes in the parent's {@code Document} and appends them to
+     * the parent. Not for stores created from a {@code Document}.
+     * </p>
+     *
+     * @param textOperator applied to text before creating {@code Text} nodes,
+     *        may be null
+     * @return the node created for the node this store was created from
+     */
+    public Node appendTo(Node parent, UnaryOperator<String> textOperator) {
+        if (isDocument) {
+            throw new IllegalStateException("Nodes cannot be appended if this store was created from a Document");
+        }
+
+        return appendNodes(parent.getOwnerDocument(), parent, textOperator);
+    }
+
+    private Node appendNodes(Document domDocument, Node parent, UnaryOperator<String> textOperator) {
+        Node first = null;
+        Node[] openElements = new Node[16];
+        int[] openEnds = new int[16];
+        int depth = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            while (depth > 0 && openEnds[depth - 1] == i) {
+                parent = openElements[--depth];
+            }
+            Node container = parent;
+
+            switch (nodeTypes[i]) {
+                case Node.ELEMENT_NODE:
+                    int name = nodeValues[i];
+                    Element element = domDocument.createElementNS(emptyToNull(nameUris[name]), nameQNames[name]);
+                    int attributeOffset = nodeAttributes[i];
+                    if (attributeOffset >= 0) {
+                        int end = attributeOffset + 1 + attributes[attributeOffset] * 2;
+                        for (int a = attributeOffset + 1; a < end; a += 2) {
+                            int attributeName = attributes[a];
+                            element.setAttributeNS(emptyToNull(nameUris[attributeName]), nameQNames[attributeName], attributeValues[attributes[a + 1]]);
+                        }
+                    }
+                    parent.appendChild(element);
+                    if (depth == openElements.length) {
+                        openElements = Arrays.copyOf(openElements, depth * 2);
+                        openEnds = Arrays.copyOf(openEnds, depth * 2);
+                    }
+                    openElements[depth] = parent;
+                    openEnds[depth++] = nodeEnds[i];
+                    parent = element;
+                    break;
+                case Node.TEXT_NODE:
+                    String data = new String(text, nodeValues[i], nodeEnds[i]);
+                    parent.appendChild(domDocument.createTextNode(textOperator == null ? data : textOperator.apply(data)));
+                    break;
+                case Node.COMMENT_NODE:
+                    parent.appendChild(domDocument.createComment(new String(text, nodeValues[i], nodeEnds[i])));
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected node type " + nodeTypes[i]);
+            }
+            if (first == null) {
+                first = container.getLastChild();
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Writes the nodes for {@link FoBinaryCodec}. Offsets are not written,
+     * they are recreated from lengths when decoding.
+     */
+    /* default */ void encode(FoBinaryCodec.Encoder encoder) {
+        encoder.writeByte(isDocument ? 1 : 0);
+
+        encoder.writeVarint(nameUris.length);
+        for (int i = 0; i < nameUris.length; i++) {
+            encoder.writeString(nameUris[i]);
+            encoder.writeString(nameLocalNames[i]);
+            encoder.writeString(nameQNames[i]);
+        }
+        encoder.writeVarint(attributeValues.length);
+        for (String attributeValue : attributeValues) {
+            encoder.writeString(attributeValue);
+        }
+
+        encoder.writeVarint(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            encoder.writeByte(nodeTypes[i]);
+            if (nodeTypes[i] == Node.ELEMENT_NODE) {
+                encoder.writeVarint(nodeValues[i]);
+                // Descendant count, typically much smaller than the end index.
+                encoder.writeVarint(nodeEnds[i] - i - 1);
+                int attributeOffset = nodeAttributes[i];
+                if (attributeOffset < 0) {
+                    encoder.writeVarint(0);
+                }
+                else {
+                    int end = attributeOffset + 1 + attributes[attributeOffset] * 2;
+                    encoder.writeVarint(attributes[attributeOffset]);
+                    for (int a = attributeOffset + 1; a < end; a++) {
+                        encoder.writeVarint(attributes[a]);
+                    }
+                }
+            }
+            else {
+                encoder.writeVarint(nodeEnds[i]);
+            }
+        }
+
+        encoder.writeText(text);
+    }
+
+    /**
+     * Reads nodes written by {@link #encode(FoBinaryCodec.Encoder)}.
+     */
+    /* default */ static FoNodeStore decode(FoBinaryCodec.Decoder decoder) {
+        boolean isDocument = decoder.readByte() != 0;
+
+        // Each name is three string indexes, each attribute value one, and each node at least a type and a varint.
+        int nameCount = decoder.readCount(3);
+        String[] nameUris = new String[nameCount];
+        String[] nameLocalNames = new String[nameCount];
+        String[] nameQNames = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            nameUris[i] = decoder.readString();
+            nameLocalNames[i] = decoder.readString();
+            nameQNames[i] = decoder.readString();
+        }
+        String[] attributeValues = new String[decoder.readCount(1)];
+        for (int i = 0; i < attributeValues.length; i++) {
+            attributeValues[i] = decoder.readString();
+        }
+
+        int nodeCount = decoder.readCount(2);
+        byte[] nodeTypes = new byte[nodeCount];
+        int[] nodeValues = new int[nodeCount];
+        int[] nodeEnds = new int[nodeCount];
+        int[] nodeAttributes = new int[nodeCount];
+        int[] attributes = new int[256];
+        int attributesLength = 0;
+        int textOffset = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodeTypes[i] = (byte) decoder.readByte();
+            switch (nodeTypes[i]) {
+                case Node.ELEMENT_NODE:
+                    nodeValues[i] = checkIndex(decoder.readVarint(), nameCount);
+                    nodeEnds[i] = i + 1 + checkIndex(decoder.readVarint(), nodeCount - i);
+                    int attributeCount = decoder.readCount(2);
+                    if (attributeCount == 0) {
+                        nodeAttributes[i] = -1;
+                    }
+                    else {
+                        if (attributesLength + 1 + attributeCount * 2 > attributes.length) {
+                            attributes = Arrays.copyOf(attributes, Math.max(attributes.length * 2, attributesLength + 1 + attributeCount * 2));
+                        }
+                        nodeAttributes[i] = attributesLength;
+                        attributes[attributesLength++] = attributeCount;
+                        for (int a = 0; a < attributeCount; a++) {
+                            attributes[attributesLength++] = checkIndex(decoder.readVarint(), nameCount);
+                            attributes[attributesLength++] = checkIndex(decoder.readVarint(), attributeValues.length);
+                        }
+                    }
+                    break;
+                case Node.TEXT_NODE:
+                case Node.COMMENT_NODE:
+                    nodeValues[i] = textOffset;
+                    // Text is at the end, and each char is at least one byte.
+                    nodeEnds[i] = decoder.readCount(1);
+                    nodeAttributes[i] = -1;
+                    textOffset += nodeEnds[i];
+                    if (textOffset < 0 || textOffset > decoder.remaining()) {
+                        throw new IllegalArgumentException("Text length exceeds the encoded data");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected node type " + nodeTypes[i]);
+            }
+        }
+
+        char[] text = decoder.readText().toCharArray();
+        if (text.length != textOffset) {
+            throw new IllegalArgumentException("Text length " + text.length + " does not match the text nodes' length " + textOffset);
+        }
+
+        return new FoNodeStore(nodeTypes, nodeValues, nodeEnds, nodeAttributes, nameUris, nameLocalNames, nameQNames,
+            Arrays.copyOf(attributes, attributesLength), attributeValues, text, isDocument);
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Invalid index " + index + ", size is " + size);
+        }
+        return index;
+    }
+
+    private static String emptyToNull(String uri) {
+        return uri.isEmpty() ? null : uri;
+    }
+
+    /**
+     * Accumulates nodes while visiting a DOM. Arrays are trimmed when copied
+     * to the {@code FoNodeStore}.
+     */
+    private static final class Compactor implements NodeVisitor {
+
+        private byte[] nodeTypes = new byte[256];
+        private int[] nodeValues = new int[256];
+        private int[] nodeEnds = new int[256];
+        private int[] nodeAttributes = new int[256];
+        private int nodeCount;
+
+        private final Map<String, Integer> nameIndexes = new HashMap<>();
+        private final List<String[]> names = new ArrayList<>();
+
+        private int[] attributes = new int[256];
+        private int attributesLength;
+        private final Map<String, Integer> attributeValueIndexes = new HashMap<>();
+        private final List<String> attributeValues = new ArrayList<>();
+
+        private final StringBuilder text = new StringBuilder();
+
+        // Indexes of the Elements being visited, used to set their ends.
+        private int[] openElements = new int[16];
+        // Size of bindings before each of the Elements being visited.
+        private int[] openBindings = new int[16];
+        private int depth;
+        // In scope namespace prefix and URI pairs.
+        private final List<String[]> bindings = new ArrayList<>();
+
+        @Override
+        public int preChildren(Element element, int elementDepth) {
+            int node = addNode(Node.ELEMENT_NODE, nameIndex(element), -1);
+
+            if (depth == openElements.length) {
+                openElements = Arrays.copyOf(openElements, depth * 2);
+                openBindings = Arrays.copyOf(openBindings, depth * 2);
+            }
+            openElements[depth] = node;
+            openBindings[depth++] = bindings.size();
+
+            NamedNodeMap domAttributes = element.getAttributes();
+            int domAttributeCount = domAttributes.getLength();
+            for (int i = 0; i < domAttributeCount; i++) {
+                Attr attribute = (Attr) domAttributes.item(i);
+                if (NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                    addAttribute(node, attribute);
+                    bindings.add(new String[] { prefix(attribute.getPrefix() == null ? null : attribute.getLocalName()), attribute.getValue() });
+                }
+            }
+
+            // Elements created using createElementNS() may not have a namespace declaration.
+            // Add declarations where needed, as the Transformer does for DOMSource.
+            ensureDeclared(node, element);
+            for (int i = 0; i < domAttributeCount; i++) {
+                Attr attribute = (Attr) domAttributes.item(i);
+                if (attribute.getPrefix() != null && !NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                    ensureDeclared(node, attribute);
+                }
+            }
+
+            for (int i = 0; i < domAttributeCount; i++) {
+                Attr attribute = (Attr) domAttributes.item(i);
+                if (!NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                    addAttribute(node, attribute);
+                }
+            }
+
+            return STATUS_CONTINUE;
+        }
+
+        @Override
+        public int postChildren(Element element, int elementDepth) {
+            --depth;
+            nodeEnds[openElements[depth]] = nodeCount;
+            int bindingCount = openBindings[depth];
+            while (bindings.size() > bindingCount) {
+                bindings.remove(bindings.size() - 1);
+            }
+
+            return STATUS_CONTINUE;
+        }
+
+        /* default */ void bindAncestors(Node parent) {
+            List<String[]> ancestorBindings = new ArrayList<>();
+            for (Node ancestor = parent; ancestor != null && ancestor.getNodeType() == Node.ELEMENT_NODE; ancestor = ancestor.getParentNode()) {
+                NamedNodeMap domAttributes = ancestor.getAttributes();
+                for (int i = domAttributes.getLength() - 1; i >= 0; i--) {
+                    Attr attribute = (Attr) domAttributes.item(i);
+                    if (NAMESPACE_URI_XMLNS.equals(attribute.getNamespaceURI())) {
+                        ancestorBindings.add(new String[] { prefix(attribute.getPrefix() == null ? null : attribute.getLocalName()), attribute.getValue() });
+                    }
+                }
+                if (ancestor.getNamespaceURI() != null) {
+                    ancestorBindings.add(new String[] { prefix(ancestor.getPrefix()), ancestor.getNamespaceURI() });
+                }
+            }
+            // Outermost first, so that inner bindings take precedence.
+            for (int i = ancestorBindings.size() - 1; i >= 0; i--) {
+                bindings.add(ancestorBindings.get(i));
+            }
+        }
+
+        private void ensureDeclared(int node, Node domNode) {
+            String prefix = prefix(domNode.getPrefix());
+            String uri = domNode.getNamespaceURI() == null ? "" : domNode.getNamespaceURI();
+            if (uri.equals(boundUri(prefix))) {
+                return;
+            }
+
+            bindings.add(new String[] { prefix, uri });
+            if (prefix.isEmpty()) {
+                addAttribute(node, nameIndex(NAMESPACE_URI_XMLNS, "xmlns", "xmlns"), uri);
+            }
+            else {
+                addAttribute(node, nameIndex(NAMESPACE_URI_XMLNS, prefix, "xmlns:" + prefix), uri);
+            }
+        }
+
+        private String boundUri(String prefix) {
+            for (int i = bindings.size() - 1; i >= 0; i--) {
+                String[] binding = bindings.get(i);
+                if (binding[0].equals(prefix)) {
+                    return binding[1];
+                }
+            }
+            if ("xml".equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            return prefix.isEmpty() ? "" : null;
+        }
+
+        private String prefix(String prefix) {
+            return prefix == null ? "" : prefix;
+        }
+
+        private void addAttribute(int node, Attr attribute) {
+            addAttribute(node, nameIndex(attribute), attribute.getValue());
+        }
+
+        private void addAttribute(int node, int nameIndex, String value) {
+            int attributeOffset = nodeAttributes[node];
+            if (attributeOffset < 0) {
+                ensureAttributesCapacity(1);
+                attributeOffset = attributesLength++;
+                nodeAttributes[node] = attributeOffset;
+                attributes[attributeOffset] = 0;
+            }
+            // Attributes for a node are contiguous, they are all added before any child is visited.
+            ensureAttributesCapacity(2);
+            attributes[attributeOffset]++;
+            attributes[attributesLength++] = nameIndex;
+            attributes[attributesLength++] = attributeValueIndex(value);
+        }
+
+        @Override
+        public int visitText(Text textNode, int textDepth) {
+            addTextNode(Node.TEXT_NODE, textNode.getData());
+
+            return STATUS_CONTINUE;
+        }
+
+        @Override
+        public int visitComment(Comment comment, int commentDepth) {
+            addTextNode(Node.COMMENT_NODE, comment.getData());
+
+            return STATUS_CONTINUE;
+        }
+
+        private void addTextNode(short nodeType, String data) {
+            addNode(nodeType, text.length(), data.length());
+            text.append(data);
+        }
+
+        private int addNode(short nodeType, int value, int end) {
+            if (nodeCount == nodeTypes.length) {
+                int capacity = nodeCount * 2;
+                nodeTypes = Arrays.copyOf(nodeTypes, capacity);
+                nodeValues = Arrays.copyOf(nodeValues, capacity);
+                nodeEnds = Arrays.copyOf(nodeEnds, capacity);
+                nodeAttributes = Arrays.copyOf(nodeAttributes, capacity);
+            }
+            nodeTypes[nodeCount] = (byte) nodeType;
+            nodeValues[nodeCount] = value;
+            nodeEnds[nodeCount] = end;
+            nodeAttributes[nodeCount] = -1;
+
+            return nodeCount++;
+        }
+
+        private void ensureAttributesCapacity(int additional) {
+            if (attributesLength + additional > attributes.length) {
+                attributes = Arrays.copyOf(attributes, Math.max(attributes.length * 2, attributesLength + additional));
+            }
+        }
+
+        private int nameIndex(Node node) {
+            String uri = node.getNamespaceURI() == null ? "" : node.getNamespaceURI();
+            String qName = node.getNodeName();
+            String localName = node.getLocalName() == null ? qName : node.getLocalName();
+            return nameIndex(uri, localName, qName);
+        }
+
+        private int nameIndex(String uri, String localName, String qName) {
+            // Prefixes are not expected to be bound to different URIs, but cope with that anyway.
+            String key = uri + ' ' + qName;
+            Integer index = nameIndexes.get(key);
+            if (index == null) {
+                index = names.size();
+                names.add(new String[] { uri.intern(), localName.intern(), qName.intern() });
+                nameIndexes.put(key, index);
+            }
+            return index;
+        }
+
+        private int attributeValueIndex(String value) {
+            Integer index = attributeValueIndexes.get(value);
+            if (index == null) {
+                index = attributeValues.size();
+                attributeValues.add(value);
+                attributeValueIndexes.put(value, index);
+            }
+            return index;
+        }
+    }
+
+}
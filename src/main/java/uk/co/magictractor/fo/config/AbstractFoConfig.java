@@ -0,0 +1,139 @@
+/**
+ * Copyright 2024 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.apache.fop.apps.EnvironmentProfile;
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.io.ResourceResolverFactory;
+import org.apache.fop.fonts.FontCacheManagerFactory;
+import org.apache.fop.fonts.FontManager;
+import org.apache.xmlgraphics.image.loader.impl.AbstractImageSessionContext.FallbackResolver;
+import org.apache.xmlgraphics.image.loader.impl.AbstractImageSessionContext.UnrestrictedFallbackResolver;
+import org.apache.xmlgraphics.io.ResourceResolver;
+
+import uk.co.magictractor.fo.measure.TextMeasurer;
+
+/**
+ * Base class for FoConfig implementations. The FopFactory is created lazily
+ * and then shared, since creating a FopFactory is expensive (font detection
+ * etc).
+ */
+public abstract class AbstractFoConfig implements FoConfig {
+
+    private volatile FopFactory fopFactory;
+    private volatile TextMeasurer textMeasurer;
+
+    // Transformer is not thread safe.
+    @Override
+    public Transformer getTransformer() {
+        try {
+            return TransformerFactory.newInstance().newTransformer();
+            // return TransformerFactory.newDefaultInstance().newTransformer();
+        }
+        catch (TransformerConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public FopFactory getFopFactory() {
+        FopFactory result = fopFactory;
+        if (result == null) {
+            synchronized (this) {
+                result = fopFactory;
+                if (result == null) {
+                    try {
+                        result = createFopFactory();
+                    }
+                    catch (URISyntaxException e) {
+                        throw new RuntimeException(e);
+                    }
+                    HyphenationPreloader.installInto(result);
+                    fopFactory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TextMeasurer getTextMeasurer() {
+        TextMeasurer result = textMeasurer;
+        if (result == null) {
+            synchronized (this) {
+                result = textMeasurer;
+                if (result == null) {
+                    result = TextMeasurer.forPdf(getFopFactory());
+                    textMeasurer = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    protected abstract FopFactory createFopFactory() throws URISyntaxException;
+
+    protected EnvironmentProfile createEnvironmentProfile() throws URISyntaxException {
+        // Allow {@code src="images/myimage.png"} to pick up images from the classpath.
+        URI defaultBaseUri = AbstractFoConfig.class.getResource("/").toURI();
+        // TODO! better URI, file:, jrt:, and jar: supported by default (how did I find that out?)
+        // {file=sun.net.www.protocol.file.Handler@3e2055d6, jrt=sun.net.www.protocol.jrt.Handler@50029372, jar=sun.net.www.protocol.jar.Handler@e3b3b2f}
+        // Would be nice to explicitly use something like {@code src="url(classpath:images/myimage.png)"}
+
+        return new EnvironmentProfile() {
+            private final ResourceResolver resourceResolver = ResourceResolverFactory.createDefaultResourceResolver();
+            private final FallbackResolver fallbackResolver = new UnrestrictedFallbackResolver();
+
+            private final FontManager fontManager = new FontManager(
+                ResourceResolverFactory.createInternalResourceResolver(defaultBaseUri, resourceResolver),
+                // Maybe allow the FontDetector to be configurable? Might want default. Options include: also reads system fonts (FOP default),
+                // or ManifestFontDetector, or none (same as turning off auto detect).
+                // TODO! log warning/error if auto detect not on and a font detector is comnfigured
+                // hmm... maybe combine the detectors so per doc fonts can be ignored if also in the manifest??
+                // More weight for a FoConfigBuilder?
+                new MultiFontDetector(new ManifestFontDetector(), new FoWriterFontDetector()),
+                FontCacheManagerFactory.createDefault());
+
+            @Override
+            public ResourceResolver getResourceResolver() {
+                return resourceResolver;
+            }
+
+            @Override
+            public FontManager getFontManager() {
+                return fontManager;
+            }
+
+            @Override
+            public FallbackResolver getFallbackResolver() {
+                return fallbackResolver;
+            }
+
+            @Override
+            public URI getDefaultBaseURI() {
+                return defaultBaseUri;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import java.net.URISyntaxException;
+
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.FopFactoryBuilder;
+import org.apache.fop.apps.FopFactoryConfig;
+import org.apache.fop.configuration.Configuration;
+
+import uk.co.magictractor.fo.config.dynamic.FopDynamicConfiguration;
+
+/**
+ * FoConfig using configuration built in code rather than parsed from
+ * {@code fop.xconf}.
+ */
+public class DynamicFoConfig extends AbstractFoConfig {
+
+    private final FopDynamicConfiguration configuration;
+
+    public DynamicFoConfig(FopDynamicConfiguration configuration) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("configuration must not be null");
+        }
+        this.configuration = configuration;
+    }
+
+    public FopDynamicConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    protected FopFactory createFopFactory() throws URISyntaxException {
+        FopFactoryBuilder fopFactoryBuilder = new FopFactoryBuilder(createEnvironmentProfile())
+                // Only used for renderer configuration.
+                .setConfiguration(configuration);
+
+        // Top level values are only applied by FopConfParser, so apply them here.
+        Configuration child = configuration.getChild("strict-configuration", false);
+        if (child != null) {
+            fopFactoryBuilder.setStrictUserConfigValidation(child.getValueAsBoolean(false));
+        }
+        child = configuration.getChild("strict-validation", false);
+        if (child != null) {
+            fopFactoryBuilder.setStrictFOValidation(child.getValueAsBoolean(true));
+        }
+        child = configuration.getChild("accessibility", false);
+        if (child != null) {
+            fopFactoryBuilder.setAccessibility(child.getValueAsBoolean(false));
+        }
+        child = configuration.getChild("source-resolution", false);
+        if (child != null) {
+            fopFactoryBuilder.setSourceResolution(child.getValueAsFloat(FopFactoryConfig.DEFAULT_SOURCE_RESOLUTION));
+        }
+        child = configuration.getChild("target-resolution", false);
+        if (child != null) {
+            fopFactoryBuilder.setTargetResolution(child.getValueAsFloat(FopFactoryConfig.DEFAULT_TARGET_RESOLUTION));
+        }
+        child = configuration.getChild("default-page-settings", false);
+        if (child != null) {
+            String height = child.getAttribute("height", null);
+            if (height != null) {
+                fopFactoryBuilder.setPageHeight(height);
+            }
+            String width = child.getAttribute("width", null);
+            if (width != null) {
+                fopFactoryBuilder.setPageWidth(width);
+            }
+        }
+
+        return fopFactoryBuilder.build();
+    }
+
+}
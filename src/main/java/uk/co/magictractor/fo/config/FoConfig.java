@@ -15,10 +15,14 @@
  */
 package uk.co.magictractor.fo.config;
 
+import java.util.List;
+
 import javax.xml.transform.Transformer;
 
 import org.apache.fop.apps.FopFactory;
 
+import uk.co.magictractor.fo.measure.TextMeasurer;
+
 /**
  *
  */
@@ -28,4 +32,27 @@ public interface FoConfig {
 
     FopFactory getFopFactory();
 
+    /**
+     * Returns a measurer for the fonts available to this config's FopFactory
+     * when rendering PDFs. Creating a measurer sets up the fonts, so
+     * implementations should create it when first used and then share it, as
+     * {@link AbstractFoConfig} does. The default creates a new measurer for
+     * each call.
+     */
+    default TextMeasurer getTextMeasurer() {
+        return TextMeasurer.forPdf(getFopFactory());
+    }
+
+    /**
+     * Loads hyphenation patterns for the given languages into a cache shared
+     * by all FopFactories, and adds them to this config's FopFactory. Call at
+     * startup to avoid the cost of loading on first use.
+     *
+     * @param languages language codes with an optional country, such as "en",
+     *        "en_GB" or "de-CH"
+     */
+    default List<PreloadedHyphenation> preloadHyphenation(String... languages) {
+        return HyphenationPreloader.preload(getFopFactory(), languages);
+    }
+
 }
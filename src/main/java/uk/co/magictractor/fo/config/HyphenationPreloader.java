@@ -0,0 +1,198 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.hyphenation.HyphenationTree;
+import org.apache.fop.hyphenation.HyphenationTreeCache;
+import org.apache.fop.hyphenation.Hyphenator;
+
+/**
+ * <p>
+ * Hyphenation trees shared by all FopFactories created by this library.
+ * FOP caches hyphenation trees per FopFactory, so without this each factory
+ * loads its own copy on first use of a language.
+ * </p>
+ * <p>
+ * Trees are only read once loaded, and FOP already shares them between
+ * threads using the same FopFactory, so sharing between factories is safe.
+ * </p>
+ * <p>
+ * Languages without patterns are not remembered, so patterns which become
+ * available later, for example via a different FopFactory's hyphenation
+ * base, are still loaded.
+ * </p>
+ */
+public final class HyphenationPreloader {
+
+    private static final Log LOG = LogFactory.getLog(HyphenationPreloader.class);
+
+    // Keyed by HyphenationTreeCache.constructLlccKey().
+    private static final Map<String, PreloadedHyphenation> PRELOADED = new ConcurrentHashMap<>();
+
+    // Factories which receive newly loaded trees. Weak so that discarded factories can be collected.
+    // Also used as the lock for installing trees, so that a factory cannot miss a tree loaded while it is registered.
+    private static final Map<FopFactory, Boolean> FACTORIES = new WeakHashMap<>();
+
+    private HyphenationPreloader() {
+    }
+
+    /**
+     * Loads hyphenation trees for the given languages, if not already loaded,
+     * and adds all shared trees to the FopFactory's cache. Newly loaded trees
+     * are also added to every other FopFactory which has shared trees.
+     *
+     * @param languages language codes with an optional country, such as "en",
+     *        "en_GB" or "de-CH"
+     */
+    public static List<PreloadedHyphenation> preload(FopFactory fopFactory, String... languages) {
+        installInto(fopFactory);
+
+        List<PreloadedHyphenation> result = new ArrayList<>(languages.length);
+        for (String language : languages) {
+            String[] langAndCountry = splitLanguage(language);
+            String key = HyphenationTreeCache.constructLlccKey(langAndCountry[0], langAndCountry[1]);
+            PreloadedHyphenation preloaded = PRELOADED.get(key);
+            if (preloaded == null) {
+                // Loaded outside the lock because loading XML patterns is slow.
+                preloaded = load(fopFactory, langAndCountry[0], langAndCountry[1]);
+                if (preloaded.isFound()) {
+                    preloaded = share(key, preloaded);
+                }
+            }
+            result.add(preloaded);
+        }
+
+        return result;
+    }
+
+    private static PreloadedHyphenation share(String key, PreloadedHyphenation preloaded) {
+        synchronized (FACTORIES) {
+            PreloadedHyphenation existing = PRELOADED.putIfAbsent(key, preloaded);
+            if (existing != null) {
+                // Loaded concurrently by another thread.
+                return existing;
+            }
+            for (FopFactory fopFactory : FACTORIES.keySet()) {
+                fopFactory.getHyphenationTreeCache().cache(key, preloaded.getHyphenationTree());
+            }
+        }
+        return preloaded;
+    }
+
+    /**
+     * Adds all shared trees to the FopFactory's cache, and registers the
+     * FopFactory to receive trees which are loaded later. Called when
+     * {@code AbstractFoConfig} creates a FopFactory.
+     */
+    public static void installInto(FopFactory fopFactory) {
+        HyphenationTreeCache cache = fopFactory.getHyphenationTreeCache();
+        synchronized (FACTORIES) {
+            if (FACTORIES.put(fopFactory, Boolean.TRUE) != null) {
+                return;
+            }
+            for (Map.Entry<String, PreloadedHyphenation> entry : PRELOADED.entrySet()) {
+                cache.cache(entry.getKey(), entry.getValue().getHyphenationTree());
+            }
+        }
+    }
+
+    public static List<PreloadedHyphenation> getPreloaded() {
+        return new ArrayList<>(PRELOADED.values());
+    }
+
+    private static PreloadedHyphenation load(FopFactory fopFactory, String lang, String country) {
+        FOUserAgent userAgent = fopFactory.newFOUserAgent();
+
+        long startNanos = System.nanoTime();
+        HyphenationTree tree = Hyphenator.getHyphenationTree(lang, country,
+            userAgent.getHyphenationResourceResolver(), userAgent.getHyphenationPatternNames(), userAgent);
+        long loadNanos = System.nanoTime() - startNanos;
+
+        PreloadedHyphenation preloaded = new PreloadedHyphenation(lang, country, tree, loadNanos, serializedSize(tree));
+        if (tree == null) {
+            // Patterns are not bundled with fop-core, they're in the separate fop-hyph jar.
+            LOG.warn("No hyphenation patterns found for " + preloaded.getLanguage());
+        }
+        else if (LOG.isDebugEnabled()) {
+            LOG.debug("Preloaded " + preloaded);
+        }
+
+        return preloaded;
+    }
+
+    /**
+     * The serialized size is used as an approximation of memory use. It's
+     * consistent between JVMs, unlike measuring heap usage, and it's also the
+     * format used for FOP's precompiled .hyp files.
+     */
+    private static long serializedSize(HyphenationTree tree) {
+        if (tree == null) {
+            return 0;
+        }
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(tree);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return counter.count;
+    }
+
+    private static String[] splitLanguage(String language) {
+        if (language == null || language.isEmpty()) {
+            throw new IllegalArgumentException("language must not be empty");
+        }
+        int separatorIndex = language.indexOf('_');
+        if (separatorIndex == -1) {
+            separatorIndex = language.indexOf('-');
+        }
+        if (separatorIndex == -1) {
+            return new String[] { language, null };
+        }
+        return new String[] { language.substring(0, separatorIndex), language.substring(separatorIndex + 1) };
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
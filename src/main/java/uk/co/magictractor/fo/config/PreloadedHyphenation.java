@@ -0,0 +1,74 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import com.google.common.base.MoreObjects;
+
+import org.apache.fop.hyphenation.HyphenationTree;
+
+/**
+ * Load statistics for a hyphenation tree in {@code HyphenationPreloader}.
+ */
+public final class PreloadedHyphenation {
+
+    private final String lang;
+    private final String country;
+    private final HyphenationTree hyphenationTree;
+    private final long loadNanos;
+    private final long serializedBytes;
+
+    /* default */ PreloadedHyphenation(String lang, String country, HyphenationTree hyphenationTree, long loadNanos, long serializedBytes) {
+        this.lang = lang;
+        this.country = country;
+        this.hyphenationTree = hyphenationTree;
+        this.loadNanos = loadNanos;
+        this.serializedBytes = serializedBytes;
+    }
+
+    public String getLanguage() {
+        return country == null ? lang : lang + "_" + country;
+    }
+
+    public boolean isFound() {
+        return hyphenationTree != null;
+    }
+
+    /* default */ HyphenationTree getHyphenationTree() {
+        return hyphenationTree;
+    }
+
+    public long getLoadMillis() {
+        return loadNanos / 1_000_000;
+    }
+
+    /**
+     * An approximation of the memory used by the hyphenation tree.
+     */
+    public long getSerializedBytes() {
+        return serializedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("language", getLanguage())
+                .add("found", isFound())
+                .add("loadMillis", getLoadMillis())
+                .add("serializedBytes", serializedBytes)
+                .toString();
+    }
+
+}
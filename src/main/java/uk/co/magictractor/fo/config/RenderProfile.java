@@ -0,0 +1,82 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import uk.co.magictractor.fo.config.dynamic.FopDynamicConfiguration;
+
+/**
+ * <p>
+ * Named configurations which may be selected per {@code FoWriterBuilder}.
+ * Each profile's FoConfig, and hence its FopFactory, is created once and then
+ * shared, so writers using different profiles can coexist in one process
+ * without re-parsing configuration.
+ * </p>
+ * <p>
+ * FOP does not expose a deflate level, so FAST does not change compression.
+ * </p>
+ */
+public enum RenderProfile {
+
+    /** Configuration from {@code /fop.xconf}. */
+    DEFAULT {
+        @Override
+        protected FoConfig createFoConfig() {
+            return DefaultFoConfig.getInstance();
+        }
+    },
+
+    /**
+     * No linearization and no accessibility (structure tree), for documents
+     * which are printed or archived rather than viewed in a browser.
+     * Linearization holds the whole PDF in memory and adds a rewrite pass.
+     */
+    FAST {
+        @Override
+        protected FoConfig createFoConfig() {
+            return new DynamicFoConfig(baseConfiguration()
+                    .withPdfLinearization(false)
+                    .withAccessibility(false));
+        }
+    },
+
+    /** Linearized ("Fast Web View") for documents viewed in a browser. */
+    WEB {
+        @Override
+        protected FoConfig createFoConfig() {
+            return new DynamicFoConfig(baseConfiguration()
+                    .withPdfLinearization(true));
+        }
+    };
+
+    private FoConfig foConfig;
+
+    public synchronized FoConfig getFoConfig() {
+        if (foConfig == null) {
+            foConfig = createFoConfig();
+        }
+        return foConfig;
+    }
+
+    protected abstract FoConfig createFoConfig();
+
+    // Consistent with the bundled fop.xconf, other than linearization.
+    private static FopDynamicConfiguration baseConfiguration() {
+        return new FopDynamicConfiguration()
+                .withStrictConfiguration(true)
+                .withFontAutoDetect(true);
+    }
+
+}
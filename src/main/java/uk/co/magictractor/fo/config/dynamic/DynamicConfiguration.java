@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.MoreObjects.ToStringHelper;
@@ -169,11 +170,15 @@ public class DynamicConfiguration implements Configuration {
         return attribute;
     }
 
-    private <T> T getAttribute(String methodName, String key, T defaultValue, Class<T> type) {
-        T attribute = getAttribute0(key, type);
-        if (attribute == null) {
+    private <T> T getAttribute(String methodName, String key, T defaultValue, Function<String, T> parser) {
+        String attributeStringValue = attributes.get(key);
+        T attribute;
+        if (attributeStringValue == null || "".equals(attributeStringValue)) {
             attribute = defaultValue;
         }
+        else {
+            attribute = parser.apply(attributeStringValue);
+        }
         if (LOGGER.isDebugEnabled()) {
             // debug("{}(\"{}\", {}): {} -> {}", methodName, key, defaultValue, xpath + "/@" + key, attribute);
             String msg = new StringBuilder()
@@ -201,7 +206,7 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public String getAttribute(String key, String defaultValue) {
-        return getAttribute("getAttribute", key, defaultValue, String.class);
+        return getAttribute("getAttribute", key, defaultValue, Function.identity());
     }
 
     //    String result = getAttribute(key);
@@ -227,23 +232,22 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public float getAttributeAsFloat(String key, float defaultValue) {
-        return getAttribute("getAttributeAsFloat", key, defaultValue, Float.class);
+        return getAttribute("getAttributeAsFloat", key, defaultValue, Float::parseFloat);
     }
 
     @Override
     public int getAttributeAsInteger(String key, int defaultValue) {
-        return getAttribute("getAttributeAsInteger", key, defaultValue, Integer.class);
+        return getAttribute("getAttributeAsInteger", key, defaultValue, Integer::parseInt);
     }
 
-    private <T> T getValue0(Class<T> type) {
-        return type.cast(value);
-    }
-
-    private <T> T getValue(String methodName, T defaultValue, Class<T> type) {
-        T value = getValue0(type);
-        if (value == null) {
+    private <T> T getValue(String methodName, T defaultValue, Function<String, T> parser) {
+        T value;
+        if (this.value == null || "".equals(this.value)) {
             value = defaultValue;
         }
+        else {
+            value = parser.apply(this.value);
+        }
         if (LOGGER.isDebugEnabled()) {
             //  debug("{}({}): {} -> {}", methodName, defaultValue, xpath, value);
             String msg = new StringBuilder()
@@ -271,7 +275,7 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public String getValue(String defaultValue) {
-        return getValue("getValue", defaultValue, String.class);
+        return getValue("getValue", defaultValue, Function.identity());
     }
 
     @Override
@@ -293,7 +297,8 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public boolean getValueAsBoolean(boolean defaultValue) {
-        return getValue("getValueAsBoolean", defaultValue, Boolean.class);
+        // Consistent with getValueAsBoolean(), "yes" is not true for values.
+        return getValue("getValueAsBoolean", defaultValue, "true"::equals);
     }
 
     @Override
@@ -304,7 +309,7 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public int getValueAsInteger(int defaultValue) {
-        return getValue("getValueAsInteger", defaultValue, Integer.class);
+        return getValue("getValueAsInteger", defaultValue, Integer::parseInt);
     }
 
     @Override
@@ -315,7 +320,7 @@ public class DynamicConfiguration implements Configuration {
 
     @Override
     public float getValueAsFloat(float defaultValue) {
-        return getValue("getValueAsFloat", defaultValue, Float.class);
+        return getValue("getValueAsFloat", defaultValue, Float::parseFloat);
     }
 
     @Override
@@ -383,6 +388,65 @@ public class DynamicConfiguration implements Configuration {
         return child;
     }
 
+    /**
+     * Returns the first child with the given key, adding a child if there is
+     * none. Typically used by typed setters which should replace a value rather
+     * than repeat an element.
+     */
+    public DynamicConfiguration getOrAddChild(String key) {
+        DynamicConfiguration child = findChildNullable(key);
+        return child == null ? addChild(key) : child;
+    }
+
+    /**
+     * Returns the first child with the given key and attribute value, adding a
+     * child with that attribute if there is none. For example
+     * {@code renderer mime="application/pdf"}.
+     */
+    public DynamicConfiguration getOrAddChild(String key, String attributeKey, String attributeValue) {
+        DynamicConfiguration child = findChildNullable(key, attributeKey, attributeValue);
+        if (child == null) {
+            child = addChild(key);
+            child.setAttribute(attributeKey, attributeValue);
+        }
+
+        return child;
+    }
+
+    /**
+     * Returns the first child with the given key, or null if there is none.
+     * Unlike {@link #getOrAddChild(String)}, the configuration is not modified,
+     * so this is used by typed getters.
+     */
+    public DynamicConfiguration findChildNullable(String key) {
+        List<DynamicConfiguration> childrenList = children.get(key);
+        return childrenList == null ? null : childrenList.get(0);
+    }
+
+    /**
+     * Returns the first child with the given key and attribute value, or null
+     * if there is none. See {@link #findChildNullable(String)}.
+     */
+    public DynamicConfiguration findChildNullable(String key, String attributeKey, String attributeValue) {
+        List<DynamicConfiguration> childrenList = children.get(key);
+        if (childrenList != null) {
+            for (DynamicConfiguration child : childrenList) {
+                if (attributeValue.equals(child.attributes.get(attributeKey))) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean hasChild(String key) {
+        return children.containsKey(key);
+    }
+
+    public void removeChildren(String key) {
+        children.remove(key);
+    }
+
     private void ensureIndexed(DynamicConfiguration configuration) {
         if (!configuration.xpath.endsWith("]")) {
             configuration.xpath += "[1]";
@@ -15,13 +15,169 @@
  */
 package uk.co.magictractor.fo.config.dynamic;
 
+import org.apache.fop.configuration.Configuration;
+
+/**
+ * <p>
+ * Typed access to the elements of a FOP configuration which are used by this
+ * library. This is an alternative to {@code EmbeddedConfigurationBuilder}
+ * which builds the {@code Configuration} directly, without creating or
+ * parsing XML and without reflection.
+ * </p>
+ * <p>
+ * {@code FopFactoryBuilder.setConfiguration()} only uses the configuration
+ * for renderers. Top level values such as default page settings are applied
+ * to the {@code FopFactoryBuilder} by {@code DynamicFoConfig}.
+ * </p>
+ *
+ * @see https://xmlgraphics.apache.org/fop/2.9/configuration.html
+ */
 public class FopDynamicConfiguration extends DynamicConfiguration {
 
+    public static final String MIME_PDF = "application/pdf";
+
     public FopDynamicConfiguration() {
         super("/fop");
         setAttribute("version", "1.0");
     }
 
-    // TODO! setters (and getters?)
+    //// Top level values.
+
+    public FopDynamicConfiguration withStrictConfiguration(boolean strictConfiguration) {
+        getOrAddChild("strict-configuration").setValue(strictConfiguration);
+        return this;
+    }
+
+    public FopDynamicConfiguration withStrictValidation(boolean strictValidation) {
+        getOrAddChild("strict-validation").setValue(strictValidation);
+        return this;
+    }
+
+    public FopDynamicConfiguration withAccessibility(boolean accessibility) {
+        getOrAddChild("accessibility").setValue(accessibility);
+        return this;
+    }
+
+    public FopDynamicConfiguration withSourceResolution(float sourceResolution) {
+        getOrAddChild("source-resolution").setValue(sourceResolution);
+        return this;
+    }
+
+    public FopDynamicConfiguration withTargetResolution(float targetResolution) {
+        getOrAddChild("target-resolution").setValue(targetResolution);
+        return this;
+    }
+
+    // Values include units, such as "297mm" or "11in".
+    public FopDynamicConfiguration withDefaultPageSettings(String height, String width) {
+        DynamicConfiguration defaultPageSettings = getOrAddChild("default-page-settings");
+        defaultPageSettings.setAttribute("height", height);
+        defaultPageSettings.setAttribute("width", width);
+        return this;
+    }
+
+    public String getDefaultPageHeight() {
+        return getChild("default-page-settings").getAttribute("height", null);
+    }
+
+    public String getDefaultPageWidth() {
+        return getChild("default-page-settings").getAttribute("width", null);
+    }
+
+    //// Renderers.
+
+    /**
+     * Returns the renderer configuration for the given MIME type, adding it if
+     * there is none. Use the typed getters to read values without modifying
+     * the configuration.
+     */
+    public DynamicConfiguration getRenderer(String mimeType) {
+        return getOrAddChild("renderers").getOrAddChild("renderer", "mime", mimeType);
+    }
+
+    public DynamicConfiguration getPdfRenderer() {
+        return getRenderer(MIME_PDF);
+    }
+
+    /**
+     * Linearization appears as "Fast Web View" in Acrobat Reader's Document
+     * Properties dialog. FOP holds the whole PDF in memory when linearization
+     * is on.
+     *
+     * @see https://xmlgraphics.apache.org/fop/2.0/output.html#pdf-linearization
+     */
+    public FopDynamicConfiguration withPdfLinearization(boolean linearization) {
+        getPdfRenderer().getOrAddChild("linearization").setValue(linearization);
+        return this;
+    }
+
+    public boolean getPdfLinearization() {
+        return findPdfRenderer().getChild("linearization").getValueAsBoolean(false);
+    }
+
+    // Unlike getPdfRenderer(), the renderer is not added if there is none.
+    private Configuration findPdfRenderer() {
+        DynamicConfiguration renderers = findChildNullable("renderers");
+        DynamicConfiguration pdfRenderer = renderers == null ? null : renderers.findChildNullable("renderer", "mime", MIME_PDF);
+        return pdfRenderer == null ? new NullConfiguration("/fop/renderers/renderer") : pdfRenderer;
+    }
+
+    /**
+     * Compression is on by default. Turning it off trades file size for
+     * rendering time. FOP does not allow the deflate level to be changed.
+     */
+    public FopDynamicConfiguration withPdfCompression(boolean compression) {
+        DynamicConfiguration pdfRenderer = getPdfRenderer();
+        pdfRenderer.removeChildren("filterList");
+        if (!compression) {
+            pdfRenderer.addChild("filterList").addChild("value").setValue("null");
+        }
+        return this;
+    }
+
+    //// Fonts.
+
+    /**
+     * Returns the PDF renderer's fonts configuration, or a
+     * {@code NullConfiguration} if there is none.
+     */
+    public Configuration getFonts() {
+        return findPdfRenderer().getChild("fonts");
+    }
+
+    private DynamicConfiguration getOrAddFonts() {
+        return getPdfRenderer().getOrAddChild("fonts");
+    }
+
+    public FopDynamicConfiguration withFontDirectory(String directory) {
+        return withFontDirectory(directory, false);
+    }
+
+    public FopDynamicConfiguration withFontDirectory(String directory, boolean recursive) {
+        DynamicConfiguration directoryConfiguration = getOrAddFonts().addChild("directory");
+        directoryConfiguration.setValue(directory);
+        if (recursive) {
+            directoryConfiguration.setAttribute("recursive", true);
+        }
+        return this;
+    }
+
+    public boolean getFontAutoDetect() {
+        return getFonts().getChildren("auto-detect").length > 0;
+    }
+
+    /**
+     * Auto detect must be on for {@code ManifestFontDetector} and
+     * {@code FoWriterFontDetector} to be used.
+     */
+    public FopDynamicConfiguration withFontAutoDetect(boolean autoDetect) {
+        if (autoDetect) {
+            getOrAddFonts().getOrAddChild("auto-detect");
+        }
+        else if (getFonts() instanceof DynamicConfiguration) {
+            ((DynamicConfiguration) getFonts()).removeChildren("auto-detect");
+        }
+        return this;
+    }
 
 }
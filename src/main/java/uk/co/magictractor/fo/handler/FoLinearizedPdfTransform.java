@@ -0,0 +1,111 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler;
+
+import java.io.OutputStream;
+
+import org.apache.fop.apps.FOPException;
+import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.apps.MimeConstants;
+import org.apache.fop.render.intermediate.AbstractIFDocumentHandlerMaker;
+import org.apache.fop.render.intermediate.IFContext;
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.pdf.PDFDocumentHandlerMaker;
+import org.apache.fop.render.pdf.PDFRendererConfig;
+import org.apache.fop.render.pdf.PDFRendererConfig.PDFRendererConfigParser;
+
+import uk.co.magictractor.fo.writer.LinearizingIFDocumentHandler;
+
+/**
+ * <p>
+ * Creates a linearized PDF without buffering the PDF in memory. The PDF is
+ * written to a temp file, linearized to a second temp file, and the result
+ * is copied to the target via a memory mapped FileChannel.
+ * </p>
+ * <p>
+ * FOP's own linearization holds the whole PDF in memory, so it must be
+ * turned off, for example with {@code RenderProfile.FAST}. The bundled
+ * {@code fop.xconf} turns it on, so cannot be used with this transform.
+ * </p>
+ */
+public class FoLinearizedPdfTransform implements FoTransform {
+
+    private final PdfLinearizer linearizer;
+
+    public FoLinearizedPdfTransform() {
+        this(new QpdfLinearizer());
+    }
+
+    public FoLinearizedPdfTransform(PdfLinearizer linearizer) {
+        this.linearizer = linearizer;
+    }
+
+    /**
+     * @throws IllegalStateException if FOP's own linearization is turned on
+     */
+    @Override
+    public Object createHandler(OutputStream out, FOUserAgent userAgent) {
+        if (isFopLinearizationEnabled(userAgent)) {
+            throw new IllegalStateException("FOP's own linearization must be turned off when using "
+                    + getClass().getSimpleName() + ", for example with RenderProfile.FAST");
+        }
+        return new LinearizingDocumentHandlerMaker();
+    }
+
+    // The renderer configuration overrides the user agent's renderer options.
+    private boolean isFopLinearizationEnabled(FOUserAgent userAgent) {
+        Boolean configured;
+        try {
+            PDFRendererConfig rendererConfig = (PDFRendererConfig) userAgent.getRendererConfig(MimeConstants.MIME_PDF, new PDFRendererConfigParser());
+            configured = rendererConfig.getConfigOptions().getLinearizationEnabled();
+        }
+        catch (FOPException e) {
+            throw new IllegalStateException(e);
+        }
+        if (configured != null) {
+            return configured;
+        }
+
+        Object option = userAgent.getRendererOptions().get("linearization");
+        return option != null && Boolean.parseBoolean(option.toString());
+    }
+
+    @Override
+    public String fileExtension() {
+        return ".pdf";
+    }
+
+    private final class LinearizingDocumentHandlerMaker extends AbstractIFDocumentHandlerMaker {
+
+        private final PDFDocumentHandlerMaker pdfMaker = new PDFDocumentHandlerMaker();
+
+        @Override
+        public IFDocumentHandler makeIFDocumentHandler(IFContext ifContext) {
+            return new LinearizingIFDocumentHandler(pdfMaker.makeIFDocumentHandler(ifContext), linearizer);
+        }
+
+        @Override
+        public boolean needsOutputStream() {
+            return pdfMaker.needsOutputStream();
+        }
+
+        @Override
+        public String[] getSupportedMimeTypes() {
+            return pdfMaker.getSupportedMimeTypes();
+        }
+    }
+
+}
@@ -21,16 +21,68 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
+import uk.co.magictractor.fo.indent.FoIndent;
+
+/**
+ * <p>
+ * Writes SAX events as XSL-FO.
+ * </p>
+ * <p>
+ * Indentation is generated here rather than being held as Text nodes in the
+ * DOM. Whitespace only text between block level elements is replaced by an
+ * indent. Text within inline elements and elements which preserve whitespace
+ * is written as is.
+ * </p>
+ */
 public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHandler {
 
+    private static final String FO_NAMESPACE_URI = "http://www.w3.org/1999/XSL/Format";
+
+    private static final Set<String> INLINE_LOCAL_NAMES = new HashSet<>(Arrays.asList(
+        "basic-link",
+        "bidi-override",
+        "character",
+        "external-graphic",
+        "float",
+        "footnote",
+        "index-page-citation-list",
+        "initial-property-set",
+        "inline",
+        "inline-container",
+        "instream-foreign-object",
+        "leader",
+        "page-number",
+        "page-number-citation",
+        "page-number-citation-last",
+        "retrieve-marker",
+        "retrieve-table-marker",
+        "scaling-value-citation",
+        "wrapper"));
+
     private OutputStreamWriter writer;
 
+    /** Null for no pretty printing. */
+    private final FoIndent indent;
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+    private boolean[] hasBlockChild = new boolean[16];
+    private int depth;
+    /** Depth of the element within which text is written as is, or zero. */
+    private int rawDepth;
+
     protected FoPassthroughHandler(OutputStream outputStream) {
+        this(outputStream, FoIndent.of(' ', 4));
+    }
+
+    protected FoPassthroughHandler(OutputStream outputStream, FoIndent indent) {
         this.writer = new OutputStreamWriter(new BufferedOutputStream(outputStream));
+        this.indent = indent;
     }
 
     // Removed @Override when switching to Java 8.
@@ -68,7 +120,15 @@ public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHa
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes)
             throws SAXException {
+        boolean isInline = FO_NAMESPACE_URI.equals(uri) && INLINE_LOCAL_NAMES.contains(localName);
         try {
+            if (isInline) {
+                flushPendingWhitespace();
+            }
+            else {
+                writeIndent(depth);
+            }
+
             writer.append('<');
             writer.append(qName);
             int n = attributes.getLength();
@@ -84,12 +144,81 @@ public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHa
         catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+
+        depth++;
+        if (depth == hasBlockChild.length) {
+            hasBlockChild = Arrays.copyOf(hasBlockChild, depth * 2);
+        }
+        hasBlockChild[depth] = false;
+        if (rawDepth == 0 && (isInline || isWhitespacePreserved(attributes))) {
+            rawDepth = depth;
+        }
+    }
+
+    private boolean isWhitespacePreserved(Attributes attributes) {
+        String whiteSpace = attributes.getValue("white-space");
+        return "preserve".equals(attributes.getValue("linefeed-treatment"))
+                || "preserve".equals(attributes.getValue("white-space-treatment"))
+                || "false".equals(attributes.getValue("white-space-collapse"))
+                || "pre".equals(whiteSpace)
+                || "pre-wrap".equals(whiteSpace);
+    }
+
+    /**
+     * Replaces pending whitespace with an indent for a block level element,
+     * comment or closing tag at the given depth.
+     */
+    private void writeIndent(int indentDepth) throws IOException {
+        if (indent == null || rawDepth != 0) {
+            flushPendingWhitespace();
+        }
+        else {
+            pendingWhitespace.setLength(0);
+            if (depth > 0) {
+                writer.append(indent.createIndent(indentDepth));
+                hasBlockChild[depth] = true;
+            }
+        }
+    }
+
+    private void flushPendingWhitespace() throws IOException {
+        if (pendingWhitespace.length() > 0) {
+            writer.append(pendingWhitespace);
+            pendingWhitespace.setLength(0);
+        }
+    }
+
+    private void writeText(char[] ch, int start, int length) throws IOException {
+        if (indent != null && rawDepth == 0 && isWhitespace(ch, start, length)) {
+            pendingWhitespace.append(ch, start, length);
+        }
+        else {
+            flushPendingWhitespace();
+            writer.append(CharBuffer.wrap(ch, start, length));
+        }
+    }
+
+    private boolean isWhitespace(char[] ch, int start, int length) {
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(ch[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
         try {
+            if (hasBlockChild[depth]) {
+                // Note that writeIndent() sets hasBlockChild[depth] again, which is harmless.
+                writeIndent(depth - 1);
+            }
+            else {
+                flushPendingWhitespace();
+            }
             writer.append("</");
             writer.append(qName);
             writer.append(">");
@@ -97,13 +226,18 @@ public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHa
         catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+
+        if (rawDepth == depth) {
+            rawDepth = 0;
+        }
+        depth--;
     }
 
     @Override
     public void characters(char ch[], int start, int length)
             throws SAXException {
         try {
-            writer.append(CharBuffer.wrap(ch, start, length));
+            writeText(ch, start, length);
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -114,7 +248,7 @@ public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHa
     public void ignorableWhitespace(char ch[], int start, int length)
             throws SAXException {
         try {
-            writer.append(CharBuffer.wrap(ch, start, length));
+            writeText(ch, start, length);
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -124,6 +258,7 @@ public class FoPassthroughHandler implements BlankContentHandler, BlankLexicalHa
     @Override
     public void comment(char ch[], int start, int length) {
         try {
+            writeIndent(depth);
             writer.append("<!-- ");
             writer.append(CharBuffer.wrap(ch, start, length));
             writer.append(" -->");
@@ -19,14 +19,27 @@ import java.io.OutputStream;
 
 import org.apache.fop.apps.FOUserAgent;
 
+import uk.co.magictractor.fo.indent.FoIndent;
+
 /**
  *
  */
 public class FoPassthroughTransform implements FoTransform {
 
+    private FoIndent indent = FoIndent.of(' ', 4);
+
+    /**
+     * @param indent indent used when writing XSL-FO, or null to write the
+     *        document without pretty printing
+     */
+    public FoPassthroughTransform withIndent(FoIndent indent) {
+        this.indent = indent;
+        return this;
+    }
+
     @Override
     public Object createHandler(OutputStream out, FOUserAgent userAgent) {
-        return new FoPassthroughHandler(out);
+        return new FoPassthroughHandler(out, indent);
     }
 
     @Override
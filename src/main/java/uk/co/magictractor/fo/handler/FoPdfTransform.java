@@ -16,17 +16,64 @@
 package uk.co.magictractor.fo.handler;
 
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
 import org.apache.fop.apps.FOUserAgent;
+import org.apache.fop.render.intermediate.AbstractIFDocumentHandlerMaker;
+import org.apache.fop.render.intermediate.IFContext;
+import org.apache.fop.render.intermediate.IFDocumentHandler;
 import org.apache.fop.render.pdf.PDFDocumentHandlerMaker;
 
+import uk.co.magictractor.fo.writer.AsyncIFDocumentHandler;
+import uk.co.magictractor.fo.writer.AsyncOutputStats;
+
 /**
  *
  */
 public class FoPdfTransform implements FoTransform {
 
+    private boolean async;
+    private Consumer<AsyncOutputStats> asyncStatsConsumer;
+
+    /**
+     * <p>
+     * Write the PDF to the output stream on a shared worker pool while
+     * layout and rendering continue on the calling thread. This only helps
+     * when writing to the output stream is slow, such as a network stream.
+     * </p>
+     * <p>
+     * This does not make compression any faster. Compression of content
+     * streams, fonts and images is done by FOP on the calling thread, as it
+     * is without this option, because FOP's fonts are shared with layout and
+     * are not thread safe. FOP does not allow the deflate level to be
+     * changed, but compression may be turned off with
+     * {@code FopDynamicConfiguration.withPdfCompression()}.
+     * </p>
+     */
+    public FoPdfTransform withAsync(boolean async) {
+        this.async = async;
+        return this;
+    }
+
+    /**
+     * Like {@code withAsync(true)}, and passes statistics for the output,
+     * such as the bytes written and the time spent writing on the worker
+     * pool, to the consumer after each document has been written.
+     */
+    public FoPdfTransform withAsync(Consumer<AsyncOutputStats> statsConsumer) {
+        if (statsConsumer == null) {
+            throw new IllegalArgumentException("statsConsumer must not be null");
+        }
+        this.async = true;
+        this.asyncStatsConsumer = statsConsumer;
+        return this;
+    }
+
     @Override
     public Object createHandler(OutputStream out, FOUserAgent userAgent) {
+        if (async) {
+            return new AsyncPdfDocumentHandlerMaker(asyncStatsConsumer);
+        }
         return new PDFDocumentHandlerMaker();
     }
 
@@ -35,4 +82,34 @@ public class FoPdfTransform implements FoTransform {
         return ".pdf";
     }
 
+    private static final class AsyncPdfDocumentHandlerMaker extends AbstractIFDocumentHandlerMaker {
+
+        private final PDFDocumentHandlerMaker pdfMaker = new PDFDocumentHandlerMaker();
+        // May be null.
+        private final Consumer<AsyncOutputStats> statsConsumer;
+
+        private AsyncPdfDocumentHandlerMaker(Consumer<AsyncOutputStats> statsConsumer) {
+            this.statsConsumer = statsConsumer;
+        }
+
+        @Override
+        public IFDocumentHandler makeIFDocumentHandler(IFContext ifContext) {
+            IFDocumentHandler pdfHandler = pdfMaker.makeIFDocumentHandler(ifContext);
+            if (statsConsumer == null) {
+                return AsyncIFDocumentHandler.wrap(pdfHandler);
+            }
+            return AsyncIFDocumentHandler.wrap(pdfHandler, statsConsumer);
+        }
+
+        @Override
+        public boolean needsOutputStream() {
+            return pdfMaker.needsOutputStream();
+        }
+
+        @Override
+        public String[] getSupportedMimeTypes() {
+            return pdfMaker.getSupportedMimeTypes();
+        }
+    }
+
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rewrites a complete PDF file as a linearized ("Fast Web View") PDF. Used
+ * by {@code FoLinearizedPdfTransform} so that linearization works from files
+ * rather than FOP holding the whole PDF in memory.
+ */
+@FunctionalInterface
+public interface PdfLinearizer {
+
+    void linearize(Path source, Path target) throws IOException;
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>
+ * PdfLinearizer which runs the qpdf command line tool. qpdf streams objects
+ * from disk, so memory use does not scale with the size of the PDF.
+ * </p>
+ * <p>
+ * qpdf is not bundled. It must be installed separately, and the default
+ * constructor expects to find a {@code qpdf} executable on the PATH.
+ * qpdf's output is logged rather than written to this process's stdout.
+ * </p>
+ *
+ * @see https://qpdf.readthedocs.io/en/stable/cli.html#option-linearize
+ */
+public class QpdfLinearizer implements PdfLinearizer {
+
+    private static final Log LOG = LogFactory.getLog(QpdfLinearizer.class);
+
+    private final String executable;
+
+    /**
+     * Runs {@code qpdf} from the PATH.
+     */
+    public QpdfLinearizer() {
+        this("qpdf");
+    }
+
+    /**
+     * @param executable the qpdf command, either on the PATH or an absolute
+     *        path
+     */
+    public QpdfLinearizer(String executable) {
+        this.executable = executable;
+    }
+
+    @Override
+    public void linearize(Path source, Path target) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(executable);
+        command.add("--linearize");
+        command.add(source.toString());
+        command.add(target.toString());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+
+        int exitCode;
+        String output;
+        try {
+            // Read before waiting, otherwise qpdf could block on a full pipe.
+            output = readOutput(process.getInputStream());
+            exitCode = process.waitFor();
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + executable, e);
+        }
+
+        // 3 is success with warnings.
+        if (exitCode != 0 && exitCode != 3) {
+            throw new IOException(executable + " failed with exit code " + exitCode + (output.isEmpty() ? "" : ": " + output));
+        }
+        if (!output.isEmpty()) {
+            if (exitCode == 3) {
+                LOG.warn(executable + ": " + output);
+            }
+            else if (LOG.isDebugEnabled()) {
+                LOG.debug(executable + ": " + output);
+            }
+        }
+    }
+
+    private static String readOutput(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream processIn = in) {
+            ByteStreams.copy(processIn, out);
+        }
+        // qpdf writes messages in the platform encoding.
+        return new String(out.toByteArray(), Charset.defaultCharset()).trim();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("executable", executable)
+                .toString();
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler.filter;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.handler.HasLexicalHandler;
+import uk.co.magictractor.fo.visitor.VariableSubstitutionVisitor;
+import uk.co.magictractor.fo.writer.Abortable;
+
+/**
+ * <p>
+ * Replaces variables such as <code>${footer.left}</code> in text and
+ * attribute values as SAX events are passed on to another
+ * {@code ContentHandler}. Unlike {@link VariableSubstitutionVisitor} the DOM
+ * is not modified, so the same {@code FoDocument} may be written many times
+ * with different values.
+ * </p>
+ * <p>
+ * A text node may be split across several {@code characters()} calls, so
+ * characters are buffered until the next event which is not
+ * {@code characters()}. An instance should only be used to write a single
+ * document, because values are computed when a variable is first found and
+ * then reused.
+ * </p>
+ * <p>
+ * Aborting the filter aborts the wrapped handler if it is
+ * {@link Abortable}, so that wrapping a writer's handler does not leave
+ * temporary files or worker threads behind.
+ * </p>
+ */
+public class TextSubstitutionFilter extends XMLFilterImpl implements LexicalHandler, Abortable {
+
+    private final VariableSubstitutionVisitor substitutions;
+    /** May be null. */
+    private final LexicalHandler lexicalHandler;
+    private final StringBuilder pendingCharacters = new StringBuilder();
+    private char[] chars = new char[256];
+
+    public TextSubstitutionFilter(ContentHandler contentHandler, FoDocument document, Map<String, Function<FoDocument, String>> variableSubstitutions) {
+        setContentHandler(contentHandler);
+        this.lexicalHandler = HasLexicalHandler.getLexicalHandler(contentHandler);
+        this.substitutions = new VariableSubstitutionVisitor(document, variableSubstitutions);
+    }
+
+    @Override
+    public void abort() {
+        pendingCharacters.setLength(0);
+        ContentHandler contentHandler = getContentHandler();
+        if (contentHandler instanceof Abortable) {
+            ((Abortable) contentHandler).abort();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        pendingCharacters.append(ch, start, length);
+    }
+
+    private void flushCharacters() throws SAXException {
+        int length = pendingCharacters.length();
+        if (length == 0) {
+            return;
+        }
+
+        if (pendingCharacters.indexOf(VariableSubstitutionVisitor.DEFAULT_VARIABLE_OPEN) < 0) {
+            // Nothing to substitute, avoid creating a String.
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            pendingCharacters.getChars(0, length, chars, 0);
+            pendingCharacters.setLength(0);
+            super.characters(chars, 0, length);
+        }
+        else {
+            String text = substitutions.substitute(pendingCharacters.toString());
+            pendingCharacters.setLength(0);
+            super.characters(text.toCharArray(), 0, text.length());
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        flushCharacters();
+        super.startElement(uri, localName, qName, substituteAttributes(atts));
+    }
+
+    // Attributes are only copied if a value changes.
+    private Attributes substituteAttributes(Attributes atts) {
+        AttributesImpl substituted = null;
+        for (int i = 0; i < atts.getLength(); i++) {
+            String value = atts.getValue(i);
+            String substitutedValue = substitutions.substitute(value);
+            if (substitutedValue != value) {
+                if (substituted == null) {
+                    substituted = new AttributesImpl(atts);
+                }
+                substituted.setValue(i, substitutedValue);
+            }
+        }
+
+        return substituted == null ? atts : substituted;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        flushCharacters();
+        super.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        flushCharacters();
+        super.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        flushCharacters();
+        super.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        flushCharacters();
+        super.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        flushCharacters();
+        super.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        flushCharacters();
+        super.skippedEntity(name);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        flushCharacters();
+        super.endDocument();
+    }
+
+    // LexicalHandler events are passed on in order with the buffered characters.
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.startDTD(name, publicId, systemId);
+        }
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.endDTD();
+        }
+    }
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.startEntity(name);
+        }
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.endEntity(name);
+        }
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.endCDATA();
+        }
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        flushCharacters();
+        if (lexicalHandler != null) {
+            lexicalHandler.comment(ch, start, length);
+        }
+    }
+
+}
@@ -30,8 +30,8 @@ public class DefaultFoIndent implements FoIndent {
     private final char indentChar;
     private final int indentSize;
 
-    private String indentsMax;
-    private int indentsMaxDepth;
+    // Indexed by depth, created up front so that createIndent() does not allocate.
+    private volatile String[] indents;
 
     // Users should create instance via the static methods on {@code FoIndent}.
     /* default */ DefaultFoIndent(char indentChar, int indentSize) {
@@ -46,12 +46,11 @@ public class DefaultFoIndent implements FoIndent {
         this.indentSize = indentSize;
 
         if (indentSize > 0) {
-            resizeIndentsMax(indentSize + 4);
+            resizeIndents(8);
         }
         else {
             // Always just a newline.
-            indentsMax = "\n";
-            indentsMaxDepth = Integer.MAX_VALUE;
+            indents = new String[] { "\n" };
         }
     }
 
@@ -67,18 +66,37 @@ public class DefaultFoIndent implements FoIndent {
 
     @Override
     public String createIndent(int depth) {
-        int len = 1 + depth * indentSize;
-        return indentsMax.substring(0, len);
+        if (indentSize == 0) {
+            return indents[0];
+        }
+        String[] current = indents;
+        if (depth >= current.length) {
+            current = resizeIndents(depth + 4);
+        }
+        return current[depth];
     }
 
-    private void resizeIndentsMax(int maxDepth) {
+    // Instances may be shared between threads. Each array assigned to indents
+    // is fully populated and at least as long as any that preceded it.
+    private synchronized String[] resizeIndents(int maxDepth) {
+        String[] current = indents;
+        if (current != null && maxDepth < current.length) {
+            return current;
+        }
         // Add 1 for leading newline.
         int len = 1 + (maxDepth * indentSize);
         char[] indentChars = new char[len];
         indentChars[0] = '\n';
         Arrays.fill(indentChars, 1, indentChars.length, indentChar);
-        indentsMax = new String(indentChars);
-        indentsMaxDepth = maxDepth;
+        String indentsMax = new String(indentChars);
+
+        String[] resized = new String[maxDepth + 1];
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            resized[depth] = indentsMax.substring(0, 1 + depth * indentSize);
+        }
+        indents = resized;
+
+        return resized;
     }
 
     @Override
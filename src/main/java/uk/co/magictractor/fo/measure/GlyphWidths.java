@@ -0,0 +1,98 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.measure;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.fop.fonts.Font;
+
+/**
+ * Character widths for a single font, in thousandths of an em. Widths are read
+ * from FOP's font metrics a page of 256 characters at a time, when a
+ * character in the page is first measured.
+ */
+/* default */ final class GlyphWidths {
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final Font font;
+    private final Object fontLock;
+    private final AtomicReferenceArray<int[]> pages = new AtomicReferenceArray<>(Character.MAX_VALUE + 1 >> PAGE_BITS);
+
+    /**
+     * @param font the font at a size of 1pt (1000 millipoints), so that widths
+     *        in millipoints are in thousandths of an em
+     * @param fontLock held while the font is used, shared with all other use
+     *        of the FontInfo which created the font
+     */
+    /* default */ GlyphWidths(Font font, Object fontLock) {
+        this.font = font;
+        this.fontLock = fontLock;
+    }
+
+    /**
+     * Returns the sum of the widths of the characters, in thousandths of an
+     * em.
+     */
+    /* default */ long width(CharSequence text) {
+        long result = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // Rare, so not cached.
+                result += supplementaryWidth(Character.toCodePoint(c, text.charAt(++i)));
+            }
+            else {
+                result += page(c >> PAGE_BITS)[c & PAGE_MASK];
+            }
+        }
+        return result;
+    }
+
+    private int[] page(int pageIndex) {
+        int[] page = pages.get(pageIndex);
+        if (page == null) {
+            page = loadPage(pageIndex);
+        }
+        return page;
+    }
+
+    // Font is not documented as thread safe, so it is only used while holding the lock.
+    private int[] loadPage(int pageIndex) {
+        synchronized (fontLock) {
+            int[] page = pages.get(pageIndex);
+            if (page == null) {
+                page = new int[PAGE_SIZE];
+                int first = pageIndex << PAGE_BITS;
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    page[i] = font.getCharWidth((char) (first + i));
+                }
+                pages.set(pageIndex, page);
+            }
+            return page;
+        }
+    }
+
+    private int supplementaryWidth(int codePoint) {
+        synchronized (fontLock) {
+            return font.getCharWidth(codePoint);
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.measure;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.fop.apps.FOPException;
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.MimeConstants;
+import org.apache.fop.fonts.FontInfo;
+import org.apache.fop.fonts.FontTriplet;
+import org.apache.fop.render.intermediate.IFContext;
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.intermediate.IFDocumentHandlerConfigurator;
+import org.apache.fop.render.pdf.PDFDocumentHandlerMaker;
+
+import uk.co.magictractor.fo.modifiers.AttributeSetter;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
+
+/**
+ * <p>
+ * Measures the width of text using the font metrics loaded by FOP, without
+ * laying out a document. This is used to choose font sizes, such as the
+ * largest size at which a name fits in a fixed width table cell, see
+ * {@link #autoFitFontSize}.
+ * </p>
+ * <p>
+ * Character widths are cached per font, so measuring a string is a lookup
+ * and an addition per character. Kerning and ligatures are ignored, so
+ * widths may be slightly larger than FOP's layout.
+ * </p>
+ * <p>
+ * Instances are thread safe. FOP's {@code FontInfo} and fonts are not, so
+ * all access to them is made while holding a single lock. Usually obtained
+ * from {@code FoConfig.getTextMeasurer()}.
+ * </p>
+ */
+public final class TextMeasurer {
+
+    // Fonts are measured at 1pt so that widths in millipoints are in thousandths of an em.
+    private static final int METRICS_FONT_SIZE = 1000;
+
+    // Sizes chosen by autoFitFontSize() are rounded down to a tenth of a point.
+    private static final int FONT_SIZE_STEPS_PER_POINT = 10;
+
+    private final FontInfo fontInfo;
+    // FontInfo and FOP's fonts are not thread safe, and fonts may share metrics, so all access uses this one lock.
+    private final Object fontLock = new Object();
+    private final Map<String, FontTriplet> triplets = new ConcurrentHashMap<>();
+    private final Map<FontTriplet, GlyphWidths> glyphWidths = new ConcurrentHashMap<>();
+
+    /**
+     * The FontInfo must not be used elsewhere, such as by a renderer, while
+     * it is used by this measurer.
+     */
+    public TextMeasurer(FontInfo fontInfo) {
+        this.fontInfo = fontInfo;
+    }
+
+    /**
+     * Creates a measurer for the fonts which are available when the factory
+     * renders PDFs. Fonts added per document using
+     * {@code FoDocumentBuilder.withFontUrl()} are not included.
+     */
+    public static TextMeasurer forPdf(FopFactory fopFactory) {
+        // Same set up as FoWriterBuilder, see the comments there about the configurator.
+        IFDocumentHandler documentHandler = new PDFDocumentHandlerMaker().makeIFDocumentHandler(new IFContext(fopFactory.newFOUserAgent()));
+        FontInfo fontInfo = new FontInfo();
+        IFDocumentHandlerConfigurator configurator = documentHandler.getConfigurator();
+        try {
+            if (configurator != null) {
+                configurator.setupFontInfo(MimeConstants.MIME_PDF, fontInfo);
+            }
+            else {
+                documentHandler.setDefaultFontInfo(fontInfo);
+            }
+        }
+        catch (FOPException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new TextMeasurer(fontInfo);
+    }
+
+    /**
+     * Finds the font for the given properties, using the same substitution
+     * rules as FOP.
+     *
+     * @param fontFamily a font family, or a comma separated list of families
+     *        in order of preference, such as {@code "Open Sans, sans-serif"}
+     * @param fontStyle such as "normal" or "italic"
+     * @param fontWeight such as 400 for normal or 700 for bold
+     */
+    public FontTriplet fontLookup(String fontFamily, String fontStyle, int fontWeight) {
+        String key = fontFamily + "," + fontStyle + "," + fontWeight;
+        FontTriplet triplet = triplets.get(key);
+        if (triplet == null) {
+            String[] families = fontFamily.split(",");
+            for (int i = 0; i < families.length; i++) {
+                families[i] = families[i].trim();
+            }
+            synchronized (fontLock) {
+                triplet = fontInfo.fontLookup(families, fontStyle, fontWeight)[0];
+            }
+            triplets.put(key, triplet);
+        }
+        return triplet;
+    }
+
+    /**
+     * Returns the width of the text in millipoints, the unit used by FOP.
+     *
+     * @param fontSize font size in millipoints
+     */
+    public int stringWidth(CharSequence text, FontTriplet font, int fontSize) {
+        return (int) (glyphWidths(font).width(text) * fontSize / METRICS_FONT_SIZE);
+    }
+
+    /**
+     * Returns the width of the text in points.
+     */
+    public double stringWidthPt(CharSequence text, FontTriplet font, double fontSizePt) {
+        return glyphWidths(font).width(text) * fontSizePt / METRICS_FONT_SIZE;
+    }
+
+    /**
+     * Returns the largest font size, in points, at which the text fits on a
+     * single line of the given width. The size is rounded down to a tenth of
+     * a point and limited to the given minimum and maximum, so text may not
+     * fit at the minimum size.
+     */
+    public double largestFittingFontSize(CharSequence text, FontTriplet font, double availableWidthPt, double minFontSizePt, double maxFontSizePt) {
+        if (minFontSizePt <= 0 || maxFontSizePt < minFontSizePt) {
+            throw new IllegalArgumentException("Font sizes must be positive and the maximum must not be less than the minimum");
+        }
+
+        // Width is proportional to the font size, so there is no need to search.
+        double widthAt1Pt = stringWidthPt(text, font, 1);
+        if (widthAt1Pt == 0) {
+            return maxFontSizePt;
+        }
+        double fittingSize = Math.floor(availableWidthPt / widthAt1Pt * FONT_SIZE_STEPS_PER_POINT) / FONT_SIZE_STEPS_PER_POINT;
+
+        return Math.max(minFontSizePt, Math.min(maxFontSizePt, fittingSize));
+    }
+
+    /**
+     * <p>
+     * Creates a modifier which sets {@code font-size} to the largest size at
+     * which the text fits on a single line of the given width. Used to fit
+     * text to fixed width blocks and table cells, for example
+     * </p>
+     *
+     * <pre>
+     * builder.appendText(name, width("40mm"), measurer.autoFitFontSize(name, font, "40mm", 6, 11));
+     * </pre>
+     * <p>
+     * The size is calculated when the modifier is created, and the modifier
+     * should only be used with the given text.
+     * </p>
+     *
+     * @param availableWidth a length such as "40mm", "1.5in" or "72pt"
+     */
+    public AttributeSetter autoFitFontSize(CharSequence text, FontTriplet font, String availableWidth, double minFontSizePt, double maxFontSizePt) {
+        double fontSize = largestFittingFontSize(text, font, toPoints(availableWidth), minFontSizePt, maxFontSizePt);
+
+        return ElementModifiers.attributeSetter("font-size", formatPoints(fontSize));
+    }
+
+    private GlyphWidths glyphWidths(FontTriplet font) {
+        GlyphWidths result = glyphWidths.get(font);
+        if (result == null) {
+            synchronized (fontLock) {
+                result = glyphWidths.get(font);
+                if (result == null) {
+                    result = new GlyphWidths(fontInfo.getFontInstance(font, METRICS_FONT_SIZE), fontLock);
+                    glyphWidths.put(font, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Absolute lengths only, relative lengths such as "50%" depend on the layout.
+    // https://www.w3.org/TR/xsl11/#d0e5752
+    /* default */ static double toPoints(String length) {
+        String trimmed = length.trim();
+        if (trimmed.length() < 3) {
+            throw new IllegalArgumentException("Length must be a number followed by units, such as \"40mm\": " + length);
+        }
+        String units = trimmed.substring(trimmed.length() - 2);
+        double value;
+        try {
+            value = Double.parseDouble(trimmed.substring(0, trimmed.length() - 2));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Length must be a number followed by units, such as \"40mm\": " + length, e);
+        }
+
+        switch (units) {
+            case "pt":
+                return value;
+            case "pc":
+                return value * 12;
+            case "in":
+                return value * 72;
+            case "cm":
+                return value * 72 / 2.54;
+            case "mm":
+                return value * 72 / 25.4;
+            case "px":
+                // FOP's default source resolution is 72dpi.
+                return value;
+            default:
+                throw new IllegalArgumentException("Units must be one of pt, pc, in, cm, mm or px: " + length);
+        }
+    }
+
+    private static String formatPoints(double fontSizePt) {
+        // Sizes are rounded to a tenth of a point, so avoid output such as "10.100000000000001pt".
+        long tenths = Math.round(fontSizePt * FONT_SIZE_STEPS_PER_POINT);
+        return tenths % 10 == 0 ? (tenths / 10) + "pt" : (tenths / 10) + "." + (tenths % 10) + "pt";
+    }
+
+}
@@ -82,7 +82,7 @@ public class AttributeSetter implements ElementModifier {
             }
             else {
                 Namespace namespace = attributeNamespaces.get(i);
-                element.setAttributeNS(namespace.getUri(), namespace.getPrefix() + ":" + attributeNames.get(i), attributeValues.get(i));
+                element.setAttributeNS(namespace.getUri(), namespace.qualifiedName(attributeNames.get(i)), attributeValues.get(i));
             }
         }
     }
@@ -15,10 +15,10 @@
  */
 package uk.co.magictractor.fo.modifiers;
 
-import java.util.UUID;
-
 import org.w3c.dom.Element;
 
+import uk.co.magictractor.fo.FoIds;
+
 /**
  * <p>
  * An {@code ElementModifier} that abuses the {@code id} attribute to pass
@@ -73,8 +73,8 @@ public class IdOverloadSetter implements ElementModifier {
     public void modify(Element t) {
         String id = t.getAttribute("id");
         if (id == null || id.isEmpty()) {
-            // TODO! something smaller and many more configurable than guid
-            id = SEPARATOR + value + ";unique=" + UUID.randomUUID();
+            // Counter based rather than random, so output is reproducible.
+            id = SEPARATOR + value + ";unique=" + FoIds.of(t.getOwnerDocument()).allocate("u");
         }
         else {
             // If there's an id it should already be unique.
@@ -15,6 +15,9 @@
  */
 package uk.co.magictractor.fo.namespace;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.xml.namespace.QName;
 
 // https://www.w3schools.com/xml/xml_namespaces.asp
@@ -23,6 +26,9 @@ public class Namespace {
     private final String prefix;
     private final String uri;
 
+    // Namespaces may be shared between threads, DefaultNamespaces are.
+    private final Map<String, String> qualifiedNames = new ConcurrentHashMap<>();
+
     public Namespace(String prefix, String uri) {
         this.prefix = prefix;
         this.uri = uri;
@@ -36,6 +42,20 @@ public class Namespace {
         return uri;
     }
 
+    /**
+     * Returns the prefixed name, such as "fo:block", for use with
+     * {@code Document.createElementNS()}. The names are cached, so repeated
+     * calls do not create new Strings.
+     */
+    public String qualifiedName(String localName) {
+        // get() first because computeIfAbsent() locks even if the key is present in Java 8.
+        String qualifiedName = qualifiedNames.get(localName);
+        if (qualifiedName == null) {
+            qualifiedName = qualifiedNames.computeIfAbsent(localName, name -> prefix + ":" + name);
+        }
+        return qualifiedName;
+    }
+
     public QName qName(String localName) {
         return new QName(uri, localName, prefix);
     }
@@ -15,41 +15,90 @@
  */
 package uk.co.magictractor.fo.stack;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 import org.w3c.dom.Element;
 
 /**
- *
+ * Stack backed by parallel arrays of Elements and their kinds, so that
+ * pushing and popping do not allocate.
  */
 public class ArrayElementStack implements ElementStack {
 
-    private final Deque<Element> deque = new ArrayDeque<>();
+    private Element[] elements = new Element[16];
+    private ElementKind[] kinds = new ElementKind[16];
+    private int size;
 
     @Override
     public void push(Element element) {
-        deque.addLast(element);
+        push(element, ElementKind.of(element));
+    }
+
+    @Override
+    public void push(Element element, ElementKind kind) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[size] = element;
+        kinds[size] = kind;
+        size++;
     }
 
     @Override
     public Element pop() {
-        return deque.removeLast();
+        checkNotEmpty();
+        size--;
+        Element element = elements[size];
+        elements[size] = null;
+        return element;
     }
 
     @Override
     public Element peek() {
-        return deque.getLast();
+        checkNotEmpty();
+        return elements[size - 1];
+    }
+
+    @Override
+    public ElementKind peekKind() {
+        checkNotEmpty();
+        return kinds[size - 1];
     }
 
     @Override
     public int depth() {
-        return deque.size();
+        return size;
     }
 
+    // Only used when populating the stack with a template's ancestors, so shifting is acceptable.
     @Override
     public void addFirst(Element element) {
-        deque.addFirst(element);
+        if (size == elements.length) {
+            grow();
+        }
+        System.arraycopy(elements, 0, elements, 1, size);
+        System.arraycopy(kinds, 0, kinds, 1, size);
+        elements[0] = element;
+        kinds[0] = ElementKind.of(element);
+        size++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+
+    private void grow() {
+        elements = Arrays.copyOf(elements, elements.length * 2);
+        kinds = Arrays.copyOf(kinds, kinds.length * 2);
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
     }
 
 }
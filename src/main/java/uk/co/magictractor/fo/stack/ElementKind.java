@@ -0,0 +1,49 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.stack;
+
+import org.w3c.dom.Element;
+
+/**
+ * The kinds of {@code Element} which {@code FoDocumentBuilder} needs to
+ * distinguish when popping the {@link ElementStack}. The kind is determined
+ * once when the {@code Element} is pushed, rather than comparing local names
+ * each time the stack is inspected.
+ */
+public enum ElementKind {
+
+    BLOCK, INLINE, INLINE_CONTAINER, FLOW, OTHER;
+
+    public static ElementKind of(Element element) {
+        String localName = element.getLocalName();
+        if (localName == null) {
+            return OTHER;
+        }
+        switch (localName) {
+            case "block":
+                return BLOCK;
+            case "inline":
+                return INLINE;
+            case "inline-container":
+                return INLINE_CONTAINER;
+            case "flow":
+                return FLOW;
+            default:
+                return OTHER;
+        }
+    }
+
+}
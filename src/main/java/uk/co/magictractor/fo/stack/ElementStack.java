@@ -22,14 +22,24 @@ import org.w3c.dom.Element;
  */
 public interface ElementStack {
 
+    /**
+     * Pushes the element, determining its kind using
+     * {@link ElementKind#of(Element)}.
+     */
     void push(Element element);
 
+    void push(Element element, ElementKind kind);
+
     Element pop();
 
     Element peek();
 
+    ElementKind peekKind();
+
     int depth();
 
     void addFirst(Element p);
 
+    void clear();
+
 }
@@ -27,6 +27,11 @@ public class ImmutableElementStack implements ElementStack {
         throw error();
     }
 
+    @Override
+    public void push(Element element, ElementKind kind) {
+        throw error();
+    }
+
     @Override
     public Element pop() {
         throw error();
@@ -37,6 +42,11 @@ public class ImmutableElementStack implements ElementStack {
         throw error();
     }
 
+    @Override
+    public ElementKind peekKind() {
+        throw error();
+    }
+
     @Override
     public int depth() {
         throw error();
@@ -47,6 +57,11 @@ public class ImmutableElementStack implements ElementStack {
         throw error();
     }
 
+    @Override
+    public void clear() {
+        throw error();
+    }
+
     private IllegalStateException error() {
         // TODO! allow this message to be configurable
         return new IllegalStateException("Closed");
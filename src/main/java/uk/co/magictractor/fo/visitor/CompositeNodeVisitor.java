@@ -0,0 +1,155 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.visitor;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Comment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+/**
+ * <p>
+ * Runs several visitors in a single traversal, rather than traversing once
+ * for each visitor.
+ * </p>
+ * <p>
+ * Each visitor is given the same calls it would get if it were traversed
+ * alone. A visitor which returns {@code STATUS_SKIP_CHILDREN} from
+ * {@code preChildren()} is not called again until the traversal has passed
+ * that Element, and a visitor which returns {@code STATUS_DONE} is not called
+ * again. The traversal stops when every visitor is done.
+ * </p>
+ */
+public class CompositeNodeVisitor implements NodeVisitor {
+
+    private final NodeVisitor[] visitors;
+    // The Element whose descendants each visitor is skipping, or null.
+    private final Element[] skipping;
+    private final boolean[] done;
+    private int activeCount;
+
+    public CompositeNodeVisitor(NodeVisitor... visitors) {
+        this.visitors = visitors.clone();
+        this.skipping = new Element[visitors.length];
+        this.done = new boolean[visitors.length];
+        this.activeCount = visitors.length;
+    }
+
+    @Override
+    public int preChildren(Element element, int depth) {
+        boolean isAnyDescending = false;
+        for (int i = 0; i < visitors.length; i++) {
+            if (isActive(i)) {
+                int status = visitors[i].preChildren(element, depth);
+                if (status == STATUS_SKIP_CHILDREN) {
+                    skipping[i] = element;
+                }
+                else if (status == STATUS_DONE) {
+                    setDone(i);
+                }
+                else {
+                    isAnyDescending = true;
+                }
+            }
+        }
+
+        if (activeCount == 0) {
+            return STATUS_DONE;
+        }
+        if (!isAnyDescending) {
+            // The traversal skips the children and postChildren(), so stop skipping here.
+            for (int i = 0; i < visitors.length; i++) {
+                if (skipping[i] == element) {
+                    skipping[i] = null;
+                }
+            }
+            return STATUS_SKIP_CHILDREN;
+        }
+
+        return STATUS_CONTINUE;
+    }
+
+    @Override
+    public int postChildren(Element element, int depth) {
+        for (int i = 0; i < visitors.length; i++) {
+            if (skipping[i] == element) {
+                skipping[i] = null;
+            }
+            else if (isActive(i)) {
+                int status = visitors[i].postChildren(element, depth);
+                if (status == STATUS_SKIP_CHILDREN) {
+                    throw new IllegalStateException("postChildren() should not return STATUS_SKIP_CHILDREN, children have already been visited");
+                }
+                updateStatus(i, status);
+            }
+        }
+
+        return compositeStatus();
+    }
+
+    @Override
+    public int visitAttribute(Attr attribute) {
+        for (int i = 0; i < visitors.length; i++) {
+            if (isActive(i)) {
+                updateStatus(i, visitors[i].visitAttribute(attribute));
+            }
+        }
+
+        return compositeStatus();
+    }
+
+    @Override
+    public int visitText(Text text, int depth) {
+        for (int i = 0; i < visitors.length; i++) {
+            if (isActive(i)) {
+                updateStatus(i, visitors[i].visitText(text, depth));
+            }
+        }
+
+        return compositeStatus();
+    }
+
+    @Override
+    public int visitComment(Comment comment, int depth) {
+        for (int i = 0; i < visitors.length; i++) {
+            if (isActive(i)) {
+                updateStatus(i, visitors[i].visitComment(comment, depth));
+            }
+        }
+
+        return compositeStatus();
+    }
+
+    private boolean isActive(int i) {
+        return !done[i] && skipping[i] == null;
+    }
+
+    private void updateStatus(int i, int status) {
+        if (status == STATUS_DONE) {
+            setDone(i);
+        }
+    }
+
+    private void setDone(int i) {
+        done[i] = true;
+        activeCount--;
+    }
+
+    private int compositeStatus() {
+        return activeCount == 0 ? STATUS_DONE : STATUS_CONTINUE;
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.visitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * <p>
+ * Traverses iteratively, using {@code getFirstChild()} and
+ * {@code getNextSibling()} rather than recursing with a {@code NodeList},
+ * so deeply nested content can't overflow the call stack. The DOM's parent
+ * links are used as the stack of open Elements.
+ * </p>
+ * <p>
+ * The result is the same as {@code visitor.visitNode(node, 0)} with the
+ * default {@code visitElement()} and {@code visitDocument()}.
+ * </p>
+ * <p>
+ * Also traverses the children of a Node in parallel, see
+ * {@link NodeVisitor#traverseParallel(Node, Supplier, BinaryOperator, ForkJoinPool)}.
+ * </p>
+ */
+/* default */ final class NodeTraversal {
+
+    private NodeTraversal() {
+    }
+
+    /* default */ static int traverse(Node node, NodeVisitor visitor) {
+        Node start = node;
+        int depth = 0;
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            start = ((Document) node).getDocumentElement();
+            depth = 1;
+        }
+
+        Node current = start;
+        while (true) {
+            int status;
+            if (current.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) current;
+                status = visitor.preChildren(element, depth);
+                if (status == NodeVisitor.STATUS_CONTINUE) {
+                    if (element.hasAttributes()) {
+                        NamedNodeMap attributes = element.getAttributes();
+                        for (int i = 0; i < attributes.getLength(); i++) {
+                            visitor.visitAttribute((Attr) attributes.item(i));
+                        }
+                    }
+
+                    Node firstChild = element.getFirstChild();
+                    if (firstChild != null) {
+                        current = firstChild;
+                        depth++;
+                        continue;
+                    }
+
+                    status = postChildren(visitor, element, depth);
+                }
+            }
+            else {
+                status = visitor.visitNode(current, depth);
+            }
+
+            if (status == NodeVisitor.STATUS_DONE) {
+                return NodeVisitor.STATUS_DONE;
+            }
+
+            // Move to the next sibling, ending Elements which have no more children.
+            while (true) {
+                if (current == start) {
+                    return status;
+                }
+                Node nextSibling = current.getNextSibling();
+                if (nextSibling != null) {
+                    current = nextSibling;
+                    break;
+                }
+                current = current.getParentNode();
+                depth--;
+                status = postChildren(visitor, (Element) current, depth);
+                if (status == NodeVisitor.STATUS_DONE) {
+                    return NodeVisitor.STATUS_DONE;
+                }
+            }
+        }
+    }
+
+    private static int postChildren(NodeVisitor visitor, Element element, int depth) {
+        int postStatus = visitor.postChildren(element, depth);
+        if (postStatus == NodeVisitor.STATUS_SKIP_CHILDREN) {
+            throw new IllegalStateException("postChildren() should not return STATUS_SKIP_CHILDREN, children have already been visited");
+        }
+        return postStatus;
+    }
+
+    /* default */ static <V extends NodeVisitor> V traverseParallel(Node node, Supplier<V> visitorFactory, BinaryOperator<V> combiner, ForkJoinPool pool) {
+        // Collected on the calling thread, so tasks only read their own subtrees.
+        List<Node> subtrees = new ArrayList<>();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            subtrees.add(child);
+        }
+        if (subtrees.isEmpty()) {
+            return visitorFactory.get();
+        }
+
+        // Several tasks per thread so that work is balanced when subtrees differ in size.
+        int threshold = Math.max(1, subtrees.size() / (pool.getParallelism() * 4));
+
+        return pool.invoke(new SubtreeTask<>(subtrees, 0, subtrees.size(), threshold, visitorFactory, combiner));
+    }
+
+    private static final class SubtreeTask<V extends NodeVisitor> extends RecursiveTask<V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Node> subtrees;
+        private final int start;
+        private final int end;
+        private final int threshold;
+        private final Supplier<V> visitorFactory;
+        private final BinaryOperator<V> combiner;
+
+        private SubtreeTask(List<Node> subtrees, int start, int end, int threshold, Supplier<V> visitorFactory, BinaryOperator<V> combiner) {
+            this.subtrees = subtrees;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+            this.visitorFactory = visitorFactory;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected V compute() {
+            if (end - start <= threshold) {
+                V visitor = visitorFactory.get();
+                for (int i = start; i < end; i++) {
+                    if (traverse(subtrees.get(i), visitor) == NodeVisitor.STATUS_DONE) {
+                        break;
+                    }
+                }
+                return visitor;
+            }
+
+            int middle = (start + end) >>> 1;
+            SubtreeTask<V> left = new SubtreeTask<>(subtrees, start, middle, threshold, visitorFactory, combiner);
+            SubtreeTask<V> right = new SubtreeTask<>(subtrees, middle, end, threshold, visitorFactory, combiner);
+            left.fork();
+            V rightVisitor = right.compute();
+            V leftVisitor = left.join();
+
+            // Left first so that results can be combined in document order.
+            return combiner.apply(leftVisitor, rightVisitor);
+        }
+    }
+
+}
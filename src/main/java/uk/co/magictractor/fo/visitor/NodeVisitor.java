@@ -15,6 +15,10 @@
  */
 package uk.co.magictractor.fo.visitor;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Comment;
@@ -22,7 +26,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 
 /**
@@ -65,13 +68,71 @@ public interface NodeVisitor {
      * <pre>
      * result = NodeVisitor.traverse(bounds, visitor).bestMatch();
      * </pre>
+     * <p>
+     * The traversal is iterative, see {@code NodeTraversal}. Visitors which
+     * override {@code visitElement()} or {@code visitDocument()} should call
+     * {@code visitNode()} instead.
+     * </p>
      */
     public static <V extends NodeVisitor> V traverse(Node node, V visitor) {
-        visitor.visitNode(node, 0);
+        NodeTraversal.traverse(node, visitor);
         // Visitor returned, see example in Javadoc.
         return visitor;
     }
 
+    /**
+     * Traverses the children of the node in parallel using the common
+     * {@code ForkJoinPool}, see
+     * {@link #traverseParallel(Node, Supplier, BinaryOperator, ForkJoinPool)}.
+     */
+    public static <V extends NodeVisitor> V traverseParallel(Node node, Supplier<V> visitorFactory, BinaryOperator<V> combiner) {
+        return traverseParallel(node, visitorFactory, combiner, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <p>
+     * Traverses each child of the node, typically the blocks in an
+     * {@code fo:flow}, as if by {@link #traverse}, splitting the children
+     * between tasks in the {@code ForkJoinPool}. This is only worthwhile for
+     * visitors which do significant work per Node, such as measuring text.
+     * The node itself is not visited.
+     * </p>
+     * <p>
+     * Each task gets its own visitor from {@code visitorFactory}, so
+     * visitors do not need to be thread safe, but anything they share does.
+     * The visitors are combined using {@code combiner}, which is always
+     * given the visitor for earlier children first, and the combined visitor
+     * is returned. {@code STATUS_DONE} only stops the task which returned it.
+     * </p>
+     * <p>
+     * The DOM is not thread safe, even for some reads, so visitors may only
+     * read the DOM, using:
+     * </p>
+     * <ul>
+     * <li>{@code getFirstChild()}, {@code getNextSibling()},
+     * {@code getParentNode()} and the node's name and type</li>
+     * <li>{@code hasAttributes()}, {@code getAttribute()},
+     * {@code getAttributeNS()}, and the Attrs passed to
+     * {@code visitAttribute()}</li>
+     * <li>{@code getData()}, {@code getNodeValue()} and
+     * {@code getTextContent()}</li>
+     * </ul>
+     * <p>
+     * In particular, visitors must not modify the DOM or use
+     * {@code getChildNodes()}, {@code getElementsByTagName()} or
+     * {@code getUserData()}, which use caches shared by the whole
+     * Document. {@code getAttributes()} must only be called if
+     * {@code hasAttributes()} is true, otherwise it creates an empty map. A
+     * Document parsed with deferred node expansion, the default for
+     * {@code DocumentBuilder}, creates Nodes as they are first read, so it
+     * must be fully read on one thread first. Documents built by
+     * {@code FoDocumentBuilder} from an {@code FoTemplate} are not deferred.
+     * </p>
+     */
+    public static <V extends NodeVisitor> V traverseParallel(Node node, Supplier<V> visitorFactory, BinaryOperator<V> combiner, ForkJoinPool pool) {
+        return NodeTraversal.traverseParallel(node, visitorFactory, combiner, pool);
+    }
+
     default int visitNode(Node node, int depth) {
         switch (node.getNodeType()) {
             case Node.ELEMENT_NODE:
@@ -113,9 +174,7 @@ public interface NodeVisitor {
             }
         }
 
-        NodeList childNodes = element.getChildNodes();
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node childNode = childNodes.item(i);
+        for (Node childNode = element.getFirstChild(); childNode != null; childNode = childNode.getNextSibling()) {
             int childStatus = visitNode(childNode, depth + 1);
             if (childStatus == STATUS_DONE) {
                 return STATUS_DONE;
@@ -19,61 +19,141 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
 import uk.co.magictractor.fo.FoDocument;
 
+/**
+ * <p>
+ * Replaces variables such as <code>${footer.left}</code> in text and
+ * attribute values.
+ * </p>
+ * <p>
+ * Each text node and attribute value is scanned once and every variable in it
+ * is replaced. Values are computed when a variable is first found and then
+ * reused, so an instance should only be used for a single document. Variables
+ * which do not have a substitution are left unchanged.
+ * </p>
+ */
 public class VariableSubstitutionVisitor implements NodeVisitor {
 
+    public static final String DEFAULT_VARIABLE_OPEN = "${";
+    public static final String DEFAULT_VARIABLE_CLOSE = "}";
+
     private final String variableOpen;
     private final String variableClose;
+    private final FoDocument document;
 
     // Map to actions to allow more complex actions than just text substitution.
     // One possibility would be to allow a <fo:page-number> Element to be inserted.
     // private final Map<String, SubstitutionAction> substitutionActions;
-    private Map<String, String> replacementValues = new HashMap<>();
+    private final Map<String, Function<FoDocument, String>> variableSubstitutions;
+    private final Map<String, String> replacementValues = new HashMap<>();
+
+    public VariableSubstitutionVisitor(FoDocument document, Map<String, Function<FoDocument, String>> variableSubstitutions) {
+        this(DEFAULT_VARIABLE_OPEN, DEFAULT_VARIABLE_CLOSE, document, variableSubstitutions);
+    }
 
     public VariableSubstitutionVisitor(String variableOpen, String variableClose, FoDocument document, Map<String, Function<FoDocument, String>> variableSubstitutions) {
         this.variableOpen = variableOpen;
         this.variableClose = variableClose;
-        for (Map.Entry<String, Function<FoDocument, String>> variableSubstitution : variableSubstitutions.entrySet()) {
-            replacementValues.put(variableOpen + variableSubstitution.getKey() + variableClose, variableSubstitution.getValue().apply(document));
-        }
+        this.document = document;
+        this.variableSubstitutions = variableSubstitutions;
     }
 
     @Override
     public int visitText(Text text, int depth) {
-        if (text.getData().indexOf(variableOpen) >= 0) {
-            makeSubstitutions(text);
+        String data = text.getData();
+        String substituted = substitute(data);
+        if (substituted != data) {
+            text.setData(substituted);
         }
 
         return STATUS_CONTINUE;
     }
 
-    // TODO! multiple substitutions (potentially with nodes being inserted?)
-    private void makeSubstitutions(Text text) {
-        String data = text.getData();
+    @Override
+    public int visitAttribute(Attr attribute) {
+        String value = attribute.getValue();
+        String substituted = substitute(value);
+        if (substituted != value) {
+            attribute.setValue(substituted);
+        }
 
-        int fromIndex = 0;
-        int beginIndex = data.indexOf(variableOpen, fromIndex);
-        int endIndex = data.indexOf(variableClose, beginIndex + variableOpen.length());
-        if (endIndex == -1) {
-            throw new IllegalArgumentException();
+        return STATUS_CONTINUE;
+    }
+
+    /**
+     * Substitutes variables in a single node without traversing its children.
+     * For an {@code Element}, variables in its attributes are substituted.
+     */
+    public void substitute(Node node) {
+        switch (node.getNodeType()) {
+            case Node.TEXT_NODE:
+                visitText((Text) node, 0);
+                break;
+            case Node.ELEMENT_NODE:
+                NamedNodeMap attributes = ((Element) node).getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    visitAttribute((Attr) attributes.item(i));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported node type " + node.getNodeType());
+        }
+    }
+
+    /**
+     * Returns the string with all variables replaced, or the same instance if
+     * there are no variables to replace.
+     */
+    public String substitute(String data) {
+        int open = data.indexOf(variableOpen);
+        if (open < 0) {
+            return data;
         }
 
-        String variable = data.substring(beginIndex, endIndex + variableClose.length());
+        // Created when the first replacement is made.
+        StringBuilder result = null;
+        int from = 0;
+        while (open >= 0) {
+            int close = data.indexOf(variableClose, open + variableOpen.length());
+            if (close < 0) {
+                break;
+            }
+            String replacementValue = replacementValue(data.substring(open + variableOpen.length(), close));
+            if (replacementValue != null) {
+                if (result == null) {
+                    result = new StringBuilder(data.length() + replacementValue.length());
+                }
+                result.append(data, from, open);
+                result.append(replacementValue);
+                from = close + variableClose.length();
+            }
+            open = data.indexOf(variableOpen, close + variableClose.length());
+        }
 
-        String replacementValue = this.replacementValues.get(variable);
-        String oldData = text.getData();
+        if (result == null) {
+            return data;
+        }
+        result.append(data, from, data.length());
+
+        return result.toString();
+    }
 
-        StringBuilder newDataBuilder = new StringBuilder();
-        if (beginIndex > 0) {
-            newDataBuilder.append(oldData.substring(0, beginIndex));
+    private String replacementValue(String variableName) {
+        String value = replacementValues.get(variableName);
+        if (value == null && !replacementValues.containsKey(variableName)) {
+            Function<FoDocument, String> function = variableSubstitutions.get(variableName);
+            value = function == null ? null : function.apply(document);
+            replacementValues.put(variableName, value);
         }
-        newDataBuilder.append(replacementValue);
-        newDataBuilder.append(oldData.substring(endIndex + variableClose.length()));
 
-        text.setData(newDataBuilder.toString());
+        return value;
     }
 
 }
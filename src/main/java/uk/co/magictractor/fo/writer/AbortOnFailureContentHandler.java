@@ -0,0 +1,200 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import uk.co.magictractor.fo.handler.HasLexicalHandler;
+
+/**
+ * <p>
+ * Delegates to FOP's {@code ContentHandler} and aborts the
+ * {@link Abortable} document handlers if any event fails, so that temp files
+ * and worker threads are not left behind when layout or rendering fails.
+ * </p>
+ * <p>
+ * FOP does not tell document handlers when rendering fails, so without this
+ * they would wait for an {@code endDocument()} which never comes.
+ * </p>
+ */
+/* default */ final class AbortOnFailureContentHandler implements ContentHandler, HasLexicalHandler, Abortable {
+
+    private static final Log LOG = LogFactory.getLog(AbortOnFailureContentHandler.class);
+
+    private final ContentHandler delegate;
+    private final List<Abortable> abortables;
+
+    /* default */ AbortOnFailureContentHandler(ContentHandler delegate, List<Abortable> abortables) {
+        this.delegate = delegate;
+        this.abortables = abortables;
+    }
+
+    @Override
+    public void abort() {
+        abortAll(abortables);
+    }
+
+    /* default */ static void abortAll(List<Abortable> abortables) {
+        for (Abortable abortable : abortables) {
+            try {
+                abortable.abort();
+            }
+            catch (RuntimeException e) {
+                // Continue so that the other handlers are aborted, the original failure is more useful.
+                LOG.warn("Failed to abort " + abortable, e);
+            }
+        }
+    }
+
+    @Override
+    public LexicalHandler getLexicalHandler() {
+        return HasLexicalHandler.getLexicalHandler(delegate);
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        delegate.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        try {
+            delegate.startDocument();
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        try {
+            delegate.endDocument();
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        try {
+            delegate.startPrefixMapping(prefix, uri);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        try {
+            delegate.endPrefixMapping(prefix);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        try {
+            delegate.startElement(uri, localName, qName, attributes);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        try {
+            delegate.endElement(uri, localName, qName);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        try {
+            delegate.characters(ch, start, length);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        try {
+            delegate.ignorableWhitespace(ch, start, length);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        try {
+            delegate.processingInstruction(target, data);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        try {
+            delegate.skippedEntity(name);
+        }
+        catch (SAXException | RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("delegate", delegate)
+                .add("abortables", abortables)
+                .toString();
+    }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+/**
+ * <p>
+ * Implemented by handlers which hold resources, such as temp files or worker
+ * threads, which are normally released when the document ends.
+ * </p>
+ * <p>
+ * {@link #abort()} releases the resources if writing fails or is abandoned
+ * before the document ends. It may be called more than once, and after the
+ * document has ended normally.
+ * </p>
+ */
+public interface Abortable {
+
+    void abort();
+
+}
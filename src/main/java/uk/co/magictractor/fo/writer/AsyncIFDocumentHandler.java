@@ -0,0 +1,374 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.fop.apps.FOPException;
+import org.apache.fop.fonts.FontInfo;
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.intermediate.IFDocumentHandlerConfigurator;
+import org.apache.fop.render.intermediate.IFException;
+
+/**
+ * <p>
+ * Writes an IFDocumentHandler's output on a shared pool of worker threads,
+ * so that writing to a slow target, such as a network stream, overlaps with
+ * layout and rendering on the calling thread.
+ * </p>
+ * <p>
+ * The handler itself, and the painters it creates, are still called on the
+ * calling thread. Layout and painting share FOP's {@code FontInfo}, and
+ * fonts such as {@code MultiByteFont} are not thread safe, so PDF
+ * compression cannot be moved to another thread.
+ * </p>
+ * <p>
+ * Output is handed to the pool in chunks. At most
+ * {@value #MAX_PENDING_CHUNKS} chunks are pending for each document, so the
+ * calling thread waits if the target falls behind. Chunk buffers are reused
+ * once written, and flushes do not hand off partial chunks. Failures writing
+ * to the target, including {@code Error}s, are rethrown on the calling
+ * thread.
+ * </p>
+ */
+public final class AsyncIFDocumentHandler extends IFDocumentHandlerTransform {
+
+    private static final Log LOG = LogFactory.getLog(AsyncIFDocumentHandler.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    // Shared by all documents. Each document uses at most one thread at a time, so chunks are written in order.
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+        runnable -> {
+            Thread thread = new Thread(runnable, "fo-async-output-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final IFDocumentHandler wrapped;
+    // May be null.
+    private final Consumer<AsyncOutputStats> statsConsumer;
+    private AsyncOutputStream asyncOut;
+
+    private AsyncIFDocumentHandler(IFDocumentHandler wrapped, Consumer<AsyncOutputStats> statsConsumer) {
+        super(wrapped);
+        this.wrapped = wrapped;
+        this.statsConsumer = statsConsumer;
+    }
+
+    public static IFDocumentHandler wrap(IFDocumentHandler documentHandler) {
+        return new AsyncIFDocumentHandler(documentHandler, null);
+    }
+
+    /**
+     * Wraps the handler, and passes statistics for the output to the
+     * consumer when each document has been written successfully.
+     */
+    public static IFDocumentHandler wrap(IFDocumentHandler documentHandler, Consumer<AsyncOutputStats> statsConsumer) {
+        if (statsConsumer == null) {
+            throw new IllegalArgumentException("statsConsumer must not be null");
+        }
+        return new AsyncIFDocumentHandler(documentHandler, statsConsumer);
+    }
+
+    /**
+     * Statistics for the output written so far, or null if the output is not
+     * written asynchronously because the result is not an OutputStream.
+     */
+    public AsyncOutputStats getStats() {
+        return asyncOut == null ? null : asyncOut.stats();
+    }
+
+    @Override
+    public void setResult(Result result) throws IFException {
+        if (result instanceof StreamResult && ((StreamResult) result).getOutputStream() != null) {
+            asyncOut = new AsyncOutputStream(((StreamResult) result).getOutputStream());
+            super.setResult(new StreamResult(asyncOut));
+        }
+        else {
+            // Written directly to a file etc, so there is nothing to hand off.
+            super.setResult(result);
+        }
+    }
+
+    /**
+     * The wrapped handler's configurator must be given the wrapped handler,
+     * not this transform, because configurators cast to their own handler
+     * type.
+     */
+    @Override
+    public IFDocumentHandlerConfigurator getConfigurator() {
+        IFDocumentHandlerConfigurator configurator = wrapped.getConfigurator();
+        if (configurator == null) {
+            return null;
+        }
+        return new IFDocumentHandlerConfigurator() {
+            @Override
+            public void configure(IFDocumentHandler documentHandler) throws FOPException {
+                configurator.configure(wrapped);
+            }
+
+            @Override
+            public void setupFontInfo(String mimeType, FontInfo fontInfo) throws FOPException {
+                configurator.setupFontInfo(mimeType, fontInfo);
+            }
+        };
+    }
+
+    @Override
+    public void endDocument() throws IFException {
+        try {
+            super.endDocument();
+            if (asyncOut != null) {
+                asyncOut.finish();
+                if (statsConsumer != null) {
+                    statsConsumer.accept(asyncOut.stats());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IFException("Asynchronous output failed", e);
+        }
+        catch (UncheckedIOException e) {
+            throw new IFException("Asynchronous output failed", e.getCause());
+        }
+        finally {
+            // Pending chunks are discarded if the document failed.
+            abortOutput();
+        }
+    }
+
+    /**
+     * Discards pending output if rendering fails before
+     * {@link #endDocument()}.
+     */
+    @Override
+    public void abort() {
+        abortOutput();
+        super.abort();
+    }
+
+    private void abortOutput() {
+        if (asyncOut != null) {
+            asyncOut.abort();
+        }
+    }
+
+    private static final class Chunk {
+
+        private final byte[] bytes;
+        private final int length;
+
+        private Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Buffers output into chunks which are written to the target by the
+     * shared pool. Only {@link #drain()} runs on the worker, everything else
+     * is called on the calling thread.
+     */
+    private static final class AsyncOutputStream extends OutputStream {
+
+        private final OutputStream target;
+        private final Queue<Chunk> pending = new ConcurrentLinkedQueue<>();
+        // Buffers returned by drain() once written, so at most MAX_PENDING_CHUNKS + 1 are allocated.
+        private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+        private final Semaphore permits = new Semaphore(MAX_PENDING_CHUNKS);
+        // True while a drain() task is queued or running, so that only one worker writes to the target.
+        private final AtomicBoolean isDraining = new AtomicBoolean();
+
+        private volatile Throwable failure;
+        private volatile boolean isAborted;
+        private volatile long workerNanos;
+
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private long byteCount;
+        private int chunkCount;
+        private long waitNanos;
+
+        private AsyncOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                handOff();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    handOff();
+                }
+                int copyLength = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, copyLength);
+                count += copyLength;
+                off += copyLength;
+                len -= copyLength;
+            }
+        }
+
+        /**
+         * Does nothing. FOP flushes after each PDF object, and handing off
+         * each partial chunk would cost more than writing synchronously.
+         * Buffered bytes are handed off when the chunk is full or the
+         * document ends.
+         */
+        @Override
+        public void flush() {
+            // Do nothing.
+        }
+
+        private void handOff() throws IOException {
+            checkFailure();
+            if (!permits.tryAcquire()) {
+                long startNanos = System.nanoTime();
+                try {
+                    permits.acquire();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for asynchronous output");
+                }
+                finally {
+                    waitNanos += System.nanoTime() - startNanos;
+                }
+            }
+            pending.add(new Chunk(buffer, count));
+            byteCount += count;
+            chunkCount++;
+            byte[] freeBuffer = freeBuffers.poll();
+            buffer = freeBuffer != null ? freeBuffer : new byte[CHUNK_SIZE];
+            count = 0;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (isDraining.compareAndSet(false, true)) {
+                WORKERS.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            long startNanos = System.nanoTime();
+            try {
+                Chunk chunk;
+                while ((chunk = pending.poll()) != null) {
+                    try {
+                        if (failure == null && !isAborted) {
+                            target.write(chunk.bytes, 0, chunk.length);
+                        }
+                    }
+                    catch (Throwable e) {
+                        // Includes Errors, which would otherwise be lost with the worker's stack.
+                        failure = e;
+                    }
+                    finally {
+                        freeBuffers.add(chunk.bytes);
+                        permits.release();
+                    }
+                }
+            }
+            finally {
+                workerNanos += System.nanoTime() - startNanos;
+                isDraining.set(false);
+                // A chunk may have been added after poll() returned null but before isDraining was cleared.
+                if (!pending.isEmpty()) {
+                    scheduleDrain();
+                }
+            }
+        }
+
+        /**
+         * Waits for all chunks to be written, then flushes the target.
+         */
+        private void finish() throws IOException {
+            if (count > 0) {
+                handOff();
+            }
+            try {
+                permits.acquire(MAX_PENDING_CHUNKS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for asynchronous output");
+            }
+            permits.release(MAX_PENDING_CHUNKS);
+            checkFailure();
+            target.flush();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(stats());
+            }
+        }
+
+        private AsyncOutputStats stats() {
+            return new AsyncOutputStats(byteCount, chunkCount, workerNanos, waitNanos);
+        }
+
+        private void abort() {
+            // Any chunk still pending is skipped by drain().
+            isAborted = true;
+            while (pending.poll() != null) {
+                permits.release();
+            }
+        }
+
+        private void checkFailure() throws IOException {
+            Throwable e = failure;
+            if (e == null) {
+                return;
+            }
+            if (e instanceof IOException) {
+                throw new IOException("Asynchronous output failed", e);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new IOException("Asynchronous output failed", e);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * <p>
+ * Statistics for output written by {@link AsyncIFDocumentHandler}.
+ * </p>
+ * <p>
+ * The time saved on the calling thread is roughly the worker time less the
+ * time the calling thread waited for the worker. FOP does not expose the
+ * uncompressed size of PDF streams, so the bytes saved by compression are
+ * not known.
+ * </p>
+ */
+public final class AsyncOutputStats {
+
+    private final long byteCount;
+    private final int chunkCount;
+    private final long workerNanos;
+    private final long waitNanos;
+
+    /* default */ AsyncOutputStats(long byteCount, int chunkCount, long workerNanos, long waitNanos) {
+        this.byteCount = byteCount;
+        this.chunkCount = chunkCount;
+        this.workerNanos = workerNanos;
+        this.waitNanos = waitNanos;
+    }
+
+    /**
+     * The number of bytes handed to the worker.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * The number of chunks handed to the worker.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Time spent by worker threads writing to the target.
+     */
+    public long getWorkerNanos() {
+        return workerNanos;
+    }
+
+    /**
+     * Time spent by the calling thread waiting for the worker to catch up.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("byteCount", byteCount)
+                .add("chunkCount", chunkCount)
+                .add("workerMillis", workerNanos / 1_000_000)
+                .add("waitMillis", waitNanos / 1_000_000)
+                .toString();
+    }
+
+}
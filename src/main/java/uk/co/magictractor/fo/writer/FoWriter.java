@@ -24,8 +24,10 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
 
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
 import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.compact.CompactFoDocument;
 import uk.co.magictractor.fo.config.FoConfig;
 import uk.co.magictractor.fo.config.FoWriterFontDetector;
 import uk.co.magictractor.fo.handler.HasLexicalHandler;
@@ -61,9 +63,50 @@ public class FoWriter {
         }
     }
 
+    /**
+     * <p>
+     * Starts writing a document which will be sent as SAX events, typically
+     * a page-sequence at a time by {@code FoDocumentBuilder}, so that the whole
+     * document is never held in memory.
+     * </p>
+     * <p>
+     * The given document provides metadata and font URLs, its content is not
+     * written.
+     * </p>
+     */
+    public FoWriterStream openStream(FoDocument foDocument) {
+        List<URL> fontUrls = foDocument.getFontUrls();
+        boolean hasFontUrls = fontUrls != null && !fontUrls.isEmpty();
+        if (hasFontUrls) {
+            FoWriterFontDetector.setFontUrls(fontUrls);
+        }
+
+        try {
+            ContentHandler handler = contentHandlerFunction.apply(foDocument);
+            return new FoWriterStream(handler, HasLexicalHandler.getLexicalHandler(handler), hasFontUrls);
+        }
+        catch (RuntimeException e) {
+            if (hasFontUrls) {
+                FoWriterFontDetector.reset();
+            }
+            throw e;
+        }
+    }
+
     private void write0(FoDocument foDocument) {
         ContentHandler handler = contentHandlerFunction.apply(foDocument);
 
+        if (foDocument instanceof CompactFoDocument) {
+            // No DOM, the nodes are written directly as SAX events.
+            try {
+                ((CompactFoDocument) foDocument).getNodeStore().toSax(handler, HasLexicalHandler.getLexicalHandler(handler));
+            }
+            catch (SAXException e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
         SAXResult result = new SAXResult(handler);
         // LexicalHandler can be null.
         // It is typically used if capturing intermediate XSL-FO with comments.
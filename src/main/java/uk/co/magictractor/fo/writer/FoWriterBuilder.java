@@ -17,7 +17,9 @@ package uk.co.magictractor.fo.writer;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 import javax.xml.transform.stream.StreamResult;
@@ -45,9 +47,11 @@ import uk.co.magictractor.fo.DocIO;
 import uk.co.magictractor.fo.FoDocument;
 import uk.co.magictractor.fo.config.DefaultFoConfig;
 import uk.co.magictractor.fo.config.FoConfig;
+import uk.co.magictractor.fo.config.RenderProfile;
 import uk.co.magictractor.fo.handler.ContentHandlerBroadcaster;
 import uk.co.magictractor.fo.handler.FoTransform;
 import uk.co.magictractor.fo.handler.FoTransformOutputStreamFunction;
+import uk.co.magictractor.fo.handler.filter.TextSubstitutionFilter;
 
 public class FoWriterBuilder {
 
@@ -60,6 +64,7 @@ public class FoWriterBuilder {
     private final List<EventListener> eventListeners = new ArrayList<>();
 
     private final List<TransformInfo> transforms = new ArrayList<>();
+    private Map<String, Function<FoDocument, String>> variableSubstitutions;
     // private BiFunction<FoDocument, ContentHandler, ContentHandler> filterFunction;
 
     /**
@@ -103,6 +108,48 @@ public class FoWriterBuilder {
     //        }
     //    }
 
+    public FoWriterBuilder withVariableSubstitution(String variableName, String replacement) {
+        return withVariableSubstitution(variableName, (doc) -> replacement);
+    }
+
+    /**
+     * <p>
+     * Substitutes a variable such as <code>${footer.left}</code> as the
+     * document is written, using a {@link TextSubstitutionFilter}. The
+     * document is not modified, so the same document may be written by
+     * several {@code FoWriter}s with different values.
+     * </p>
+     * <p>
+     * {@code FoDocumentBuilder.build()} substitutes the variables which were
+     * given to the builder or its template, other variables are left in the
+     * document for the writer.
+     * </p>
+     */
+    public FoWriterBuilder withVariableSubstitution(String variableName, Function<FoDocument, String> replacementValueFunction) {
+        if (variableSubstitutions == null) {
+            variableSubstitutions = new HashMap<>();
+        }
+        variableSubstitutions.put(variableName, replacementValueFunction);
+        return this;
+    }
+
+    /**
+     * Sets the FoConfig used to create {@code FOUserAgent}s. Defaults to
+     * {@code DefaultFoConfig}.
+     */
+    public FoWriterBuilder withFoConfig(FoConfig foConfig) {
+        this.foConfig = foConfig;
+        return this;
+    }
+
+    /**
+     * Uses the shared FoConfig for a named profile, for example
+     * {@code RenderProfile.FAST} to skip linearization.
+     */
+    public FoWriterBuilder withRenderProfile(RenderProfile renderProfile) {
+        return withFoConfig(renderProfile.getFoConfig());
+    }
+
     /**
      * <p>
      * Sets an EventListener which will be added to {@code FOUserAgent}s when
@@ -134,6 +181,14 @@ public class FoWriterBuilder {
             contentHandlerFunction = this::getReusableContentHandler;
         }
 
+        if (variableSubstitutions != null) {
+            // Copied so that later changes to the builder do not affect the writer.
+            Map<String, Function<FoDocument, String>> writerVariableSubstitutions = new HashMap<>(variableSubstitutions);
+            Function<FoDocument, ContentHandler> unfilteredFunction = contentHandlerFunction;
+            // A new filter for each document, because substituted values are memoized.
+            contentHandlerFunction = foDocument -> new TextSubstitutionFilter(unfilteredFunction.apply(foDocument), foDocument, writerVariableSubstitutions);
+        }
+
         //
         return new FoWriter(foConfig, contentHandlerFunction);
     }
@@ -161,6 +216,26 @@ public class FoWriterBuilder {
     }
 
     private ContentHandler buildContentHandler0(FoDocument foDocument) throws FOPException, IFException {
+        // Document handlers holding resources which must be released if rendering fails.
+        List<Abortable> abortables = new ArrayList<>();
+        ContentHandler contentHandler;
+        try {
+            contentHandler = buildContentHandler0(foDocument, abortables);
+        }
+        catch (FOPException | IFException | RuntimeException e) {
+            // A later transform failed after temp files etc were created for an earlier one.
+            AbortOnFailureContentHandler.abortAll(abortables);
+            throw e;
+        }
+
+        if (!abortables.isEmpty()) {
+            contentHandler = new AbortOnFailureContentHandler(contentHandler, abortables);
+        }
+
+        return contentHandler;
+    }
+
+    private ContentHandler buildContentHandler0(FoDocument foDocument, List<Abortable> abortables) throws FOPException, IFException {
         FOUserAgent userAgent = buildUserAgent(foDocument);
         IFContext ifContext = new IFContext(userAgent);
 
@@ -194,11 +269,14 @@ public class FoWriterBuilder {
                     configurator.configure(documentHandler);
                 }
 
+                // Added first because setResult() may create temp files.
+                addAbortable(abortables, documentHandler);
                 documentHandler.setResult(new StreamResult(out));
                 documentHandlers.add(documentHandler);
             }
             else if (handler instanceof IFDocumentHandler) {
                 IFDocumentHandler documentHandler = (IFDocumentHandler) handler;
+                addAbortable(abortables, documentHandler);
                 documentHandler.setResult(new StreamResult(out));
                 documentHandlers.add(documentHandler);
             }
@@ -284,6 +362,12 @@ public class FoWriterBuilder {
         return contentHandler;
     }
 
+    private void addAbortable(List<Abortable> abortables, IFDocumentHandler documentHandler) {
+        if (documentHandler instanceof Abortable) {
+            abortables.add((Abortable) documentHandler);
+        }
+    }
+
     private FOUserAgent buildUserAgent(FoDocument foDocument) {
         FopFactory fopFactory = foConfig.getFopFactory();
 
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+import uk.co.magictractor.fo.config.FoWriterFontDetector;
+
+/**
+ * <p>
+ * Handlers for a document which is written incrementally, created by
+ * {@link FoWriter#openStream}. The caller sends the SAX events for the whole
+ * document, including {@code startDocument()} and {@code endDocument()}, and
+ * then closes the stream. If the document cannot be completed the stream
+ * should be aborted instead.
+ * </p>
+ * <p>
+ * The stream must be used and closed on the thread which opened it.
+ * </p>
+ */
+public class FoWriterStream implements AutoCloseable {
+
+    private final ContentHandler contentHandler;
+    private final LexicalHandler lexicalHandler;
+    private final boolean hasFontUrls;
+
+    /* default */ FoWriterStream(ContentHandler contentHandler, LexicalHandler lexicalHandler, boolean hasFontUrls) {
+        this.contentHandler = contentHandler;
+        this.lexicalHandler = lexicalHandler;
+        this.hasFontUrls = hasFontUrls;
+    }
+
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    /** May return null. */
+    public LexicalHandler getLexicalHandler() {
+        return lexicalHandler;
+    }
+
+    /**
+     * Abandons an incomplete document. Resources held by the handlers, such
+     * as temporary files, are released and the stream is closed.
+     */
+    public void abort() {
+        try {
+            if (contentHandler instanceof Abortable) {
+                ((Abortable) contentHandler).abort();
+            }
+        }
+        finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (hasFontUrls) {
+            FoWriterFontDetector.reset();
+        }
+    }
+
+}
@@ -33,7 +33,7 @@ import org.apache.fop.render.intermediate.IFPainter;
 
 // TODO! better name than transform, that's already used for doc generation (transform from DomDocument)
 // Could extend IFDocumentHandlerProxy, but keep this and add logging?
-public class IFDocumentHandlerTransform implements IFDocumentHandler {
+public class IFDocumentHandlerTransform implements IFDocumentHandler, Abortable {
 
     private static final Log LOG = LogFactory.getLog(IFDocumentHandlerTransform.class);
 
@@ -43,6 +43,17 @@ public class IFDocumentHandlerTransform implements IFDocumentHandler {
         this.wrapped = wrapped;
     }
 
+    /**
+     * Aborts the wrapped handler if it is {@link Abortable}. Subclasses which
+     * hold resources should release them and then call this method.
+     */
+    @Override
+    public void abort() {
+        if (wrapped instanceof Abortable) {
+            ((Abortable) wrapped).abort();
+        }
+    }
+
     @Override
     public IFContext getContext() {
         return wrapped.getContext();
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.fop.apps.FOPException;
+import org.apache.fop.fonts.FontInfo;
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.intermediate.IFDocumentHandlerConfigurator;
+import org.apache.fop.render.intermediate.IFException;
+
+import uk.co.magictractor.fo.handler.PdfLinearizer;
+
+/**
+ * <p>
+ * Redirects the wrapped handler's output to a temp file, then linearizes the
+ * temp file and copies the result to the original output when the document
+ * ends. Peak heap does not depend on the size of the PDF.
+ * </p>
+ * <p>
+ * The linearized file is copied using memory mapped windows of the
+ * FileChannel, so the copy does not use heap buffers either.
+ * </p>
+ */
+public class LinearizingIFDocumentHandler extends IFDocumentHandlerTransform {
+
+    private static final Log LOG = LogFactory.getLog(LinearizingIFDocumentHandler.class);
+
+    // Bounds the address space used by each mapping.
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final IFDocumentHandler wrapped;
+    private final PdfLinearizer linearizer;
+
+    private OutputStream targetOut;
+    private Path unlinearizedFile;
+    private OutputStream unlinearizedOut;
+
+    public LinearizingIFDocumentHandler(IFDocumentHandler wrapped, PdfLinearizer linearizer) {
+        super(wrapped);
+        this.wrapped = wrapped;
+        this.linearizer = linearizer;
+    }
+
+    @Override
+    public void setResult(Result result) throws IFException {
+        if (!(result instanceof StreamResult) || ((StreamResult) result).getOutputStream() == null) {
+            throw new IllegalArgumentException("Result must be a StreamResult with an OutputStream");
+        }
+        targetOut = ((StreamResult) result).getOutputStream();
+
+        try {
+            unlinearizedFile = Files.createTempFile("fo-", ".pdf");
+            unlinearizedOut = new BufferedOutputStream(Files.newOutputStream(unlinearizedFile));
+        }
+        catch (IOException e) {
+            throw new IFException("Failed to create temp file", e);
+        }
+
+        super.setResult(new StreamResult(unlinearizedOut));
+    }
+
+    /**
+     * The wrapped handler's configurator must be given the wrapped handler,
+     * not this transform, because configurators cast to their own handler
+     * type.
+     */
+    @Override
+    public IFDocumentHandlerConfigurator getConfigurator() {
+        IFDocumentHandlerConfigurator configurator = wrapped.getConfigurator();
+        if (configurator == null) {
+            return null;
+        }
+        return new IFDocumentHandlerConfigurator() {
+            @Override
+            public void configure(IFDocumentHandler documentHandler) throws FOPException {
+                configurator.configure(wrapped);
+            }
+
+            @Override
+            public void setupFontInfo(String mimeType, FontInfo fontInfo) throws FOPException {
+                configurator.setupFontInfo(mimeType, fontInfo);
+            }
+        };
+    }
+
+    @Override
+    public void endDocument() throws IFException {
+        Path linearizedFile = null;
+        try {
+            super.endDocument();
+            unlinearizedOut.close();
+
+            linearizedFile = Files.createTempFile("fo-linearized-", ".pdf");
+            long startNanos = System.nanoTime();
+            linearizer.linearize(unlinearizedFile, linearizedFile);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Linearized " + Files.size(unlinearizedFile) + " bytes in "
+                        + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+            }
+
+            transferMapped(linearizedFile, targetOut);
+        }
+        catch (IOException e) {
+            throw new IFException("Failed to linearize PDF", e);
+        }
+        finally {
+            releaseUnlinearized();
+            deleteQuietly(linearizedFile);
+        }
+    }
+
+    /**
+     * Closes and deletes the temp file if rendering fails before
+     * {@link #endDocument()}.
+     */
+    @Override
+    public void abort() {
+        releaseUnlinearized();
+        super.abort();
+    }
+
+    private void releaseUnlinearized() {
+        if (unlinearizedOut != null) {
+            try {
+                unlinearizedOut.close();
+            }
+            catch (IOException e) {
+                LOG.warn("Failed to close temp file " + unlinearizedFile, e);
+            }
+            unlinearizedOut = null;
+        }
+        deleteQuietly(unlinearizedFile);
+        unlinearizedFile = null;
+    }
+
+    // Package-private for unit tests.
+    /* default */ Path getUnlinearizedFile() {
+        return unlinearizedFile;
+    }
+
+    // Package-private for unit tests.
+    /* default */ static void transferMapped(Path file, OutputStream out) throws IOException {
+        // Not closed, consistent with FOP not closing the StreamResult's stream.
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(MAP_WINDOW_SIZE, size - position);
+                MappedByteBuffer window = source.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                while (window.hasRemaining()) {
+                    target.write(window);
+                }
+                position += windowSize;
+            }
+        }
+        out.flush();
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to delete temp file " + file, e);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.performance;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.build.FoDocumentBuilder;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
+
+/**
+ * <p>
+ * Measures the time and the heap allocated when building a document of
+ * roughly 100 pages, with headings, paragraphs and bold inlines.
+ * </p>
+ * <p>
+ * Allocation is measured using {@code com.sun.management.ThreadMXBean}, which
+ * is available in HotSpot JVMs.
+ * </p>
+ */
+public class BuilderAllocationBenchmark extends PerformanceBenchmark<Void, FoDocument> {
+
+    private static final FoTemplate TEMPLATE = new FoDocumentBuilder("template.fo").buildTemplate();
+
+    private static final int SECTIONS = 100;
+    private static final int PARAGRAPHS_PER_SECTION = 6;
+    private static final int WORDS_PER_PARAGRAPH = 80;
+
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit" };
+
+    private static final int ALLOCATION_ITERATIONS = 20;
+
+    public BuilderAllocationBenchmark() {
+        addAction("Build", this::build);
+        addAction("BuildCompact", this::buildCompact);
+
+        warmUp(null);
+    }
+
+    @Override
+    public void singleRun(Function<Void, FoDocument> action) {
+        action.apply(null);
+    }
+
+    private FoDocument build(Void ignored) {
+        return appendContent(new FoDocumentBuilder(TEMPLATE)).build();
+    }
+
+    private FoDocument buildCompact(Void ignored) {
+        return appendContent(new FoDocumentBuilder(TEMPLATE)).buildCompact();
+    }
+
+    private FoDocumentBuilder appendContent(FoDocumentBuilder builder) {
+        for (int s = 0; s < SECTIONS; s++) {
+            builder.appendHeading(2, "Section " + s);
+            for (int p = 0; p < PARAGRAPHS_PER_SECTION; p++) {
+                builder.startParagraph();
+                for (int w = 0; w < WORDS_PER_PARAGRAPH; w++) {
+                    if (w > 0) {
+                        builder.appendText(" ");
+                    }
+                    if (w % 20 == 7) {
+                        builder.appendText(WORDS[w % WORDS.length], ElementModifiers.bold());
+                    }
+                    else {
+                        builder.appendText(WORDS[w % WORDS.length]);
+                    }
+                }
+                builder.endParagraph();
+            }
+        }
+        return builder;
+    }
+
+    // Bytes allocated by the current thread per call of the action.
+    private long allocatedBytesPerOp(Function<Void, FoDocument> action) {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            action.apply(null);
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / ALLOCATION_ITERATIONS;
+    }
+
+    public static void main(String[] args) {
+        BuilderAllocationBenchmark benchmark = new BuilderAllocationBenchmark();
+        benchmark.runBenchmarks();
+
+        System.out.println("Build         " + benchmark.allocatedBytesPerOp(benchmark::build) + " bytes/op");
+        System.out.println("BuildCompact  " + benchmark.allocatedBytesPerOp(benchmark::buildCompact) + " bytes/op");
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.function.Function;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import uk.co.magictractor.fo.DomUtil;
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplates;
+import uk.co.magictractor.fo.build.FoDocumentBuilder;
+import uk.co.magictractor.fo.compact.FoBinaryCodec;
+
+/**
+ * Compares a round trip through {@code FoBinaryCodec} with serializing the
+ * DOM as XML and parsing it again, for a document of 20,000 paragraphs.
+ */
+public class FoBinaryCodecBenchmark extends PerformanceBenchmark<Void, Object> {
+
+    private static final int PARAGRAPHS = 20_000;
+
+    private final FoDocument domDocument;
+    private final FoDocument compactDocument;
+
+    public FoBinaryCodecBenchmark() {
+        domDocument = buildDocument().build();
+        compactDocument = domDocument.freeze();
+
+        addAction("Binary", this::binary);
+        addAction("Xml", this::xml);
+
+        warmUp(null);
+    }
+
+    private static FoDocumentBuilder buildDocument() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withMetadataTitle("TITLE");
+        builder.appendHeading(1, "Heading");
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            builder.appendText("Paragraph " + i + " \u00e9\u20ac");
+            builder.newline();
+            builder.appendText("second line");
+            builder.endParagraph();
+        }
+        return builder;
+    }
+
+    @Override
+    public void singleRun(Function<Void, Object> action) {
+        action.apply(null);
+    }
+
+    private Object binary(Void ignored) {
+        return FoBinaryCodec.decode(FoBinaryCodec.encode(compactDocument));
+    }
+
+    private Object xml(Void ignored) {
+        return DomUtil.parseInputStream(new ByteArrayInputStream(toXml()));
+    }
+
+    private byte[] toXml() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.transform(new DOMSource(domDocument.getDomDocument()), new StreamResult(out));
+        }
+        catch (TransformerException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) {
+        FoBinaryCodecBenchmark benchmark = new FoBinaryCodecBenchmark();
+        System.out.println("Binary " + FoBinaryCodec.encode(benchmark.compactDocument).length + " bytes, XML " + benchmark.toXml().length + " bytes");
+        benchmark.runBenchmarks();
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.performance;
+
+import java.util.function.Function;
+
+import uk.co.magictractor.fo.FoTemplate;
+import uk.co.magictractor.fo.build.CompiledFoTemplate;
+import uk.co.magictractor.fo.build.FoDocumentBuilder;
+
+/**
+ * Compares creating a {@code FoDocumentBuilder} from a template, which deep
+ * clones the template's DOM, with creating one from a compiled template.
+ */
+public class TemplateInstantiationBenchmark extends PerformanceBenchmark<Void, FoDocumentBuilder> {
+
+    private static final FoTemplate TEMPLATE = new FoDocumentBuilder("template.fo").buildTemplate();
+    private static final CompiledFoTemplate COMPILED_TEMPLATE = CompiledFoTemplate.compile(TEMPLATE);
+
+    private static final int ITERATIONS = 5000;
+
+    public TemplateInstantiationBenchmark() {
+        addAction("CloneNode", this::cloneNode);
+        addAction("Compiled", this::compiled);
+
+        warmUp(null);
+    }
+
+    @Override
+    public void singleRun(Function<Void, FoDocumentBuilder> action) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            action.apply(null);
+        }
+    }
+
+    private FoDocumentBuilder cloneNode(Void ignored) {
+        return new FoDocumentBuilder(TEMPLATE);
+    }
+
+    private FoDocumentBuilder compiled(Void ignored) {
+        return new FoDocumentBuilder(COMPILED_TEMPLATE);
+    }
+
+    public static void main(String[] args) {
+        new TemplateInstantiationBenchmark().runBenchmarks();
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplates;
+
+public class FoDocumentBuilderPoolTest {
+
+    @Test
+    public void testBuilderReused() {
+        FoDocumentBuilderPool pool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+
+        FoDocumentBuilder first = pool.borrow();
+        pool.release(first);
+        FoDocumentBuilder second = pool.borrow();
+
+        assertThat(second).isSameAs(first);
+        assertThat(pool.idleCount()).isZero();
+    }
+
+    @Test
+    public void testReleaseTwice() {
+        FoDocumentBuilderPool pool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+
+        FoDocumentBuilder builder = pool.borrow();
+        pool.release(builder);
+
+        assertThatThrownBy(() -> pool.release(builder)).isInstanceOf(IllegalStateException.class);
+        assertThat(pool.idleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReleaseToOtherPool() {
+        FoDocumentBuilderPool pool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+        FoDocumentBuilderPool otherPool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+
+        FoDocumentBuilder builder = pool.borrow();
+
+        assertThatThrownBy(() -> otherPool.release(builder)).isInstanceOf(IllegalStateException.class);
+        assertThat(otherPool.idleCount()).isZero();
+    }
+
+    @Test
+    public void testResetDiscardsPreviousDocument() {
+        FoDocumentBuilderPool pool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+
+        FoDocument first = pool.build(builder -> builder.withMetadataTitle("FIRST").appendText("first"));
+        FoDocument second = pool.build(builder -> builder.appendText("second"));
+
+        assertThat(pool.idleCount()).isEqualTo(1);
+        assertThat(first.getMetadata().getTitle()).isEqualTo("FIRST");
+        assertThat(second.getMetadata().getTitle()).isNull();
+        assertThat(first.getDomDocument().getDocumentElement().getTextContent()).contains("first").doesNotContain("second");
+        assertThat(second.getDomDocument().getDocumentElement().getTextContent()).contains("second").doesNotContain("first");
+    }
+
+    @Test
+    public void testVariableSubstitutionNotSharedWithTemplate() {
+        FoDocumentBuilderPool pool = new FoDocumentBuilderPool(FoTemplates.getTemplate());
+
+        pool.build(builder -> builder.withVariableSubstitution("footer.left", "LEFT"));
+
+        assertThat(FoTemplates.getTemplate().getVariableSubstitutions().get("footer.left").apply(null)).isEmpty();
+    }
+
+}
@@ -16,14 +16,48 @@
 package uk.co.magictractor.fo.build;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import uk.co.magictractor.fo.DomUtil;
 import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplate;
 import uk.co.magictractor.fo.FoTemplates;
+import uk.co.magictractor.fo.handler.FoPassthroughTransform;
+import uk.co.magictractor.fo.handler.filter.TextSubstitutionFilter;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
+import uk.co.magictractor.fo.writer.Abortable;
+import uk.co.magictractor.fo.writer.FoWriter;
 
 public class FoDocumentBuilderTest {
 
@@ -44,6 +78,36 @@ public class FoDocumentBuilderTest {
         assertThat(doc.getMetadata().getCustomProperty("My Other Property")).isEqualTo("CUSTOM VALUE TWO");
     }
 
+    @Test
+    public void testMetadata_afterTemplate() {
+        FoDocument doc = new FoDocumentBuilder("test_metadata.fo")
+                .withMetadataTitle("TITLE")
+                .withMetadataCustomProperty("KEY", "VALUE")
+                .build();
+
+        assertThat(doc.getMetadata().getTitle()).isEqualTo("TITLE");
+        assertThat(doc.getMetadata().getAuthor()).isEqualTo("DC:AUTHOR");
+        assertThat(doc.getMetadata().getCustomProperty("KEY")).isEqualTo("VALUE");
+    }
+
+    @Test
+    public void testMetadata_nullClearsTemplate() {
+        FoDocument doc = new FoDocumentBuilder("test_metadata.fo")
+                .withMetadataTitle(null)
+                .withMetadataCreationDate(null)
+                .withMetadataCustomProperty("My Property", null)
+                .withMetadataSubject(null)
+                .withMetadataSubject("SUBJECT")
+                .build();
+
+        assertThat(doc.getMetadata().getTitle()).isNull();
+        assertThat(doc.getMetadata().getCreationDate()).isNull();
+        assertThat(doc.getMetadata().getCustomProperty("My Property")).isNull();
+        assertThat(doc.getMetadata().getSubject()).isEqualTo("SUBJECT");
+        assertThat(doc.getMetadata().getAuthor()).isEqualTo("DC:AUTHOR");
+        assertThat(doc.getMetadata().getCustomProperty("My Other Property")).isEqualTo("CUSTOM VALUE TWO");
+    }
+
     @Test
     public void testMetadata_unset() {
         FoDocument doc = FoTemplates.getTemplate();
@@ -144,4 +208,512 @@ public class FoDocumentBuilderTest {
         assertThat(doc.getMetadata().getCustomProperty("KEY2")).isEqualTo("VALUE2");
     }
 
+    @Test
+    public void testMetadata_replacesTemplate() {
+        FoDocument doc = new FoDocumentBuilder("test_metadata.fo")
+                .withMetadataTitle("TITLE")
+                .withMetadataCustomProperty("My Property", "VALUE")
+                .build();
+
+        assertThat(doc.getMetadata().getTitle()).isEqualTo("TITLE");
+        assertThat(doc.getMetadata().getAuthor()).isEqualTo("DC:AUTHOR");
+        assertThat(doc.getMetadata().getCustomProperty("My Property")).isEqualTo("VALUE");
+        assertThat(doc.getMetadata().getCustomProperty("My Other Property")).isEqualTo("CUSTOM VALUE TWO");
+        assertThat(doc.getDomDocument().getElementsByTagNameNS("http://purl.org/dc/elements/1.1/", "title").getLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAppendTable() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        Element table = builder.appendTable(squareColumns(), IntStream.range(0, 5).iterator(), 2);
+        builder.endDocument();
+
+        assertThat(table.getAttribute("table-layout")).isEqualTo("fixed");
+        assertThat(table.getElementsByTagName("fo:table-column").getLength()).isEqualTo(2);
+        assertThat(table.getElementsByTagName("fo:table-header").getLength()).isEqualTo(1);
+        // Chunks of 2, 2 and 1 rows.
+        assertThat(table.getElementsByTagName("fo:table-body").getLength()).isEqualTo(3);
+        // Header row and 5 body rows.
+        assertThat(table.getElementsByTagName("fo:table-row").getLength()).isEqualTo(6);
+    }
+
+    @Test
+    public void testAppendTable_columnWidths() {
+        List<TableColumn<Integer>> columns = squareColumns();
+        columns.get(0).withWidth("20mm");
+
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        Element table = builder.appendTable(columns, IntStream.range(0, 5).iterator());
+
+        Element firstColumn = (Element) table.getElementsByTagName("fo:table-column").item(0);
+        Element secondColumn = (Element) table.getElementsByTagName("fo:table-column").item(1);
+        assertThat(firstColumn.getAttribute("column-width")).isEqualTo("20mm");
+        // "Square".length()
+        assertThat(secondColumn.getAttribute("column-width")).isEqualTo("proportional-column-width(6)");
+    }
+
+    @Test
+    public void testAppendTable_noRows() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        Element table = builder.appendTable(squareColumns(), Collections.<Integer> emptyIterator());
+
+        assertThat(table.getElementsByTagName("fo:table-body").getLength()).isEqualTo(1);
+        assertThat(table.getElementsByTagName("fo:table-row").getLength()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAppendTable_pageSequenceStreaming() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(out), 2, 0);
+        // Five chunks of 2 rows, split into tables of 4, 4 and 2 rows.
+        Element firstTable = builder.appendTable(squareColumns(), IntStream.range(0, 10).iterator(), 2);
+        FoDocument document = builder.build();
+
+        Document written = DomUtil.parseInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(written.getElementsByTagName("fo:page-sequence").getLength()).isEqualTo(3);
+        assertThat(written.getElementsByTagName("fo:table").getLength()).isEqualTo(3);
+        assertThat(written.getElementsByTagName("fo:table-header").getLength()).isEqualTo(3);
+        // 3 header rows and 10 body rows.
+        assertThat(written.getElementsByTagName("fo:table-row").getLength()).isEqualTo(13);
+
+        // Only the last table, with a header row and 2 body rows, is retained.
+        Document retained = document.getDomDocument();
+        // fo:table, fo:flow, fo:page-sequence, removed from fo:root.
+        assertThat(firstTable.getParentNode().getParentNode().getParentNode()).isNull();
+        assertThat(retained.getElementsByTagName("fo:table").getLength()).isEqualTo(1);
+        assertThat(retained.getElementsByTagName("fo:table-column").getLength()).isEqualTo(2);
+        assertThat(retained.getElementsByTagName("fo:table-row").getLength()).isEqualTo(3);
+    }
+
+    @Test
+    public void testAppendText_coalesced() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendText("one");
+        builder.appendText(new StringBuilder(" two"));
+        builder.appendText(" three".toCharArray(), 0, 6);
+        builder.appendText(" bold", ElementModifiers.bold());
+        builder.appendText(" four");
+        Document document = builder.build().getDomDocument();
+
+        NodeList blocks = document.getElementsByTagName("fo:block");
+        Element paragraph = (Element) blocks.item(blocks.getLength() - 1);
+        assertThat(paragraph.getChildNodes().getLength()).isEqualTo(3);
+        assertThat(paragraph.getFirstChild().getNodeValue()).isEqualTo("one two three");
+        assertThat(paragraph.getTextContent()).isEqualTo("one two three bold four");
+    }
+
+    @Test
+    public void testAppendText_newline() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendText("one");
+        builder.newline();
+        builder.appendText("two");
+        Document document = builder.build().getDomDocument();
+
+        NodeList blocks = document.getElementsByTagName("fo:block");
+        Element paragraph = (Element) blocks.item(blocks.getLength() - 1);
+        assertThat(paragraph.getChildNodes().getLength()).isEqualTo(1);
+        assertThat(paragraph.getTextContent()).isEqualTo("one\ntwo");
+    }
+
+    @Test
+    public void testBookmarkTree() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate()).withBookmarkTree(2);
+        builder.appendHeading(1, "One");
+        builder.appendHeading(2, "One A");
+        builder.appendHeading(3, "Not bookmarked");
+        builder.appendHeading(1, "Two");
+        Document document = builder.build().getDomDocument();
+
+        Element bookmarkTree = (Element) document.getElementsByTagName("fo:bookmark-tree").item(0);
+        NodeList bookmarks = bookmarkTree.getElementsByTagName("fo:bookmark");
+        assertThat(bookmarks.getLength()).isEqualTo(3);
+        Element nested = (Element) bookmarks.item(1);
+        assertThat(nested.getTextContent()).isEqualTo("One A");
+        assertThat(nested.getParentNode()).isSameAs(bookmarks.item(0));
+
+        String headingId = ((Element) document.getElementsByTagName("fo:block").item(templateBlockCount() + 1)).getAttribute("id");
+        assertThat(headingId).isEqualTo(nested.getAttribute("internal-destination"));
+    }
+
+    @Test
+    public void testTableOfContents() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        Element toc = builder.appendTableOfContents(1);
+        builder.appendHeading(1, "One");
+        builder.appendHeading(2, "Not listed");
+        builder.appendHeading(1, "Two");
+        builder.build();
+
+        NodeList citations = toc.getElementsByTagName("fo:page-number-citation");
+        assertThat(citations.getLength()).isEqualTo(2);
+        assertThat(toc.getElementsByTagName("fo:basic-link").item(1).getTextContent()).isEqualTo("Two");
+    }
+
+    @Test
+    public void testBookmarkTree_pageSequenceStreaming() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(new ByteArrayOutputStream()), 10, 0);
+
+        assertThatThrownBy(() -> builder.withBookmarkTree(3)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testAppendInternalLink() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        Element heading = builder.appendHeading(1, "One");
+        String headingId = heading.getAttribute("id");
+        builder.appendInternalLink("See One", headingId);
+        builder.appendPageNumberCitation(headingId);
+        builder.build();
+
+        assertThat(builder.getElementById(headingId)).isSameAs(heading);
+    }
+
+    @Test
+    public void testAppendInternalLink_missingId() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendInternalLink("Nowhere", "missing");
+
+        assertThatThrownBy(() -> builder.build()).isInstanceOf(IllegalStateException.class).hasMessageContaining("missing");
+    }
+
+    @Test
+    public void testAppendInternalLink_templateId() {
+        FoTemplate template = templateWithId("last-page");
+
+        for (FoTemplate t : Arrays.asList(template, CompiledFoTemplate.compile(template))) {
+            FoDocumentBuilder builder = new FoDocumentBuilder(t);
+            builder.appendPageNumberCitation("last-page");
+            builder.build();
+
+            assertThat(builder.getElementById("last-page")).isNotNull();
+        }
+    }
+
+    @Test
+    public void testAppendHeading_templateIdNotAllocated() {
+        FoTemplate template = templateWithId("heading-1");
+
+        for (FoTemplate t : Arrays.asList(template, CompiledFoTemplate.compile(template))) {
+            FoDocumentBuilder builder = new FoDocumentBuilder(t);
+            Element heading = builder.appendHeading(1, "One");
+
+            assertThat(heading.getAttribute("id")).isEqualTo("heading-2");
+        }
+    }
+
+    private FoTemplate templateWithId(String id) {
+        FoDocumentBuilder templateBuilder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        templateBuilder.startBlock(ElementModifiers.attributeSetter("id", id));
+        templateBuilder.endBlock();
+        return templateBuilder.buildTemplate();
+    }
+
+    @Test
+    public void testPageSequenceStreaming_idsReleased() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(new ByteArrayOutputStream()), 2, 0);
+        String headingId = builder.appendHeading(1, "One").getAttribute("id");
+        builder.appendText("First");
+        builder.endParagraph();
+        builder.appendText("Second");
+        builder.endParagraph();
+        builder.appendPageNumberCitation(headingId);
+        builder.build();
+
+        // The heading has been written, so is no longer referenced, but the citation is valid.
+        assertThat(builder.getElementById(headingId)).isNull();
+        assertThat(builder.getIds().contains(headingId)).isTrue();
+    }
+
+    @Test
+    public void testDuplicateId() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.startBlock(ElementModifiers.attributeSetter("id", "same"));
+        builder.endBlock();
+
+        assertThatThrownBy(() -> builder.startBlock(ElementModifiers.attributeSetter("id", "same"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testCompiledTemplate() throws TransformerException {
+        FoTemplate template = new FoDocumentBuilder("template.fo").buildTemplate();
+        CompiledFoTemplate compiledTemplate = CompiledFoTemplate.compile(template);
+
+        assertThat(toXml(buildWithText(compiledTemplate))).isEqualTo(toXml(buildWithText(template)));
+    }
+
+    @Test
+    public void testVariableSubstitution_compiledTemplate() {
+        FoTemplate template = new FoDocumentBuilder("template.fo")
+                .withVariableSubstitution("footer.left", "LEFT")
+                .withVariableSubstitution("footer.middle", "MIDDLE")
+                .buildCompiledTemplate();
+        FoDocumentBuilder builder = new FoDocumentBuilder(template);
+        builder.appendText("${footer.left} and ${footer.middle}");
+        Document document = builder.build().getDomDocument();
+
+        Element staticContent = (Element) document.getElementsByTagName("fo:static-content").item(1);
+        assertThat(staticContent.getTextContent()).contains("LEFT").contains("MIDDLE").doesNotContain("${");
+        assertThat(document.getElementsByTagName("fo:flow").item(0).getTextContent()).isEqualTo("LEFT and MIDDLE");
+    }
+
+    @Test
+    public void testPageSequenceStreaming() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(out), 2, 0);
+        for (int i = 0; i < 5; i++) {
+            builder.appendText("Paragraph " + i);
+            builder.endParagraph();
+        }
+        FoDocument document = builder.build();
+
+        Document written = DomUtil.parseInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(written.getElementsByTagName("fo:page-sequence").getLength()).isEqualTo(3);
+        assertThat(written.getElementsByTagName("fo:block").getLength()).isEqualTo(5 + 3 * templateBlockCount());
+        // Only the last page-sequence is retained.
+        assertThat(document.getDomDocument().getElementsByTagName("fo:page-sequence").getLength()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPageSequenceStreaming_keepWithNext() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(out), 1, 0);
+        builder.appendHeading(1, "Heading");
+        builder.appendText("First");
+        builder.endParagraph();
+        builder.appendText("Second");
+        builder.endParagraph();
+        builder.build();
+
+        Document written = DomUtil.parseInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(written.getElementsByTagName("fo:page-sequence").getLength()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPageSequenceStreaming_variableSubstitution() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoTemplate template = new FoDocumentBuilder("template.fo")
+                .withVariableSubstitution("footer.left", "LEFT")
+                .buildTemplate();
+        FoDocumentBuilder builder = new FoDocumentBuilder(template)
+                .withPageSequenceStreaming(passthroughWriter(out), 1, 0);
+        builder.appendText("First");
+        builder.endParagraph();
+        builder.appendText("${footer.left}");
+        builder.endParagraph();
+        FoDocument document = builder.build();
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).contains("LEFT").doesNotContain("${footer.left}");
+        // Substituted while writing, the retained DOM is not traversed again.
+        assertThat(document.getDomDocument().getDocumentElement().getTextContent()).contains("${footer.left}");
+    }
+
+    @Test
+    public void testPageSequenceStreaming_metadataAfterWrite() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(new ByteArrayOutputStream()), 1, 0)
+                .withMetadataTitle("Before");
+        builder.appendText("First");
+        builder.endParagraph();
+
+        assertThatThrownBy(() -> builder.withMetadataTitle("After")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testPageSequenceStreaming_abort() {
+        AbortableHandler handler = new AbortableHandler();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(new FoWriter(null, foDocument -> handler), 1, 0);
+        builder.appendText("First");
+        builder.endParagraph();
+        builder.appendText("Second");
+
+        builder.abort();
+
+        assertThat(handler.isAborted).isTrue();
+    }
+
+    @Test
+    public void testPageSequenceStreaming_abortSubstitutingWriter() {
+        AbortableHandler handler = new AbortableHandler();
+        Map<String, Function<FoDocument, String>> variableSubstitutions = Collections.singletonMap("footer.left", foDocument -> "LEFT");
+        // As created by FoWriterBuilder.withVariableSubstitution().
+        FoWriter writer = new FoWriter(null, foDocument -> new TextSubstitutionFilter(handler, foDocument, variableSubstitutions));
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(writer, 1, 0);
+        builder.appendText("${footer.left}");
+        builder.endParagraph();
+        builder.appendText("Second");
+
+        builder.abort();
+
+        assertThat(handler.isAborted).isTrue();
+    }
+
+    @Test
+    public void testPageSequenceStreaming_failure() {
+        AbortableHandler handler = new AbortableHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                if ("flow".equals(localName)) {
+                    throw new SAXException("bang");
+                }
+            }
+        };
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(new FoWriter(null, foDocument -> handler), 1, 0);
+        builder.appendText("First");
+
+        assertThatThrownBy(builder::endParagraph).isInstanceOf(IllegalStateException.class);
+        assertThat(handler.isAborted).isTrue();
+    }
+
+    @Test
+    public void testAppendSection_parallel() throws Exception {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        List<FoDocumentBuilder> sections = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                FoDocumentBuilder section = builder.newSection();
+                sections.add(section);
+                String heading = "Chapter " + i;
+                futures.add(executor.submit(() -> {
+                    section.appendHeading(1, heading);
+                    for (int j = 0; j < 100; j++) {
+                        section.appendText("Text " + j);
+                        section.endParagraph();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        for (FoDocumentBuilder section : sections) {
+            builder.appendSection(section);
+        }
+        Document document = builder.build().getDomDocument();
+
+        NodeList headings = document.getElementsByTagName("fo:block");
+        List<String> chapters = new ArrayList<>();
+        for (int i = 0; i < headings.getLength(); i++) {
+            assertThat(headings.item(i).getOwnerDocument()).isSameAs(document);
+            String text = headings.item(i).getTextContent();
+            if (text.startsWith("Chapter")) {
+                chapters.add(text);
+            }
+        }
+        assertThat(chapters).containsExactly("Chapter 0", "Chapter 1", "Chapter 2");
+    }
+
+    @Test
+    public void testAppendSection_otherBuilder() {
+        FoDocumentBuilder section = new FoDocumentBuilder(FoTemplates.getTemplate()).newSection();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+
+        assertThatThrownBy(() -> builder.appendSection(section)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testAppendSection_pageSequenceTextLength() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withPageSequenceStreaming(passthroughWriter(out), 0, 20);
+        FoDocumentBuilder section = builder.newSection();
+        for (int i = 0; i < 5; i++) {
+            // 11 characters, so the limit is reached by every second paragraph.
+            section.appendText("Paragraph " + i);
+            section.endParagraph();
+        }
+        builder.appendSection(section);
+        // Within the limit, because only "Paragraph 4" is in the current page-sequence.
+        builder.appendText("X");
+        builder.endParagraph();
+        FoDocument document = builder.build();
+
+        Document written = DomUtil.parseInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(written.getElementsByTagName("fo:page-sequence").getLength()).isEqualTo(3);
+        assertThat(document.getDomDocument().getElementsByTagName("fo:flow").item(0).getTextContent()).isEqualTo("Paragraph 4X");
+    }
+
+    @Test
+    public void testFreeze_concurrentWrites() throws Exception {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendHeading(1, "Heading");
+        for (int i = 0; i < 100; i++) {
+            builder.appendText("Paragraph " + i);
+            builder.endParagraph();
+        }
+        FoDocument frozen = builder.build().freeze();
+        assertThat(frozen.freeze()).isSameAs(frozen);
+
+        List<Future<String>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    passthroughWriter(out).write(frozen);
+                    return out.toString("UTF-8");
+                }));
+            }
+            String expected = futures.get(0).get();
+            assertThat(expected).contains("Paragraph 99");
+            for (Future<String> future : futures) {
+                assertThat(future.get()).isEqualTo(expected);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class AbortableHandler extends DefaultHandler implements Abortable {
+
+        private boolean isAborted;
+
+        @Override
+        public void abort() {
+            isAborted = true;
+        }
+    }
+
+    private FoWriter passthroughWriter(ByteArrayOutputStream out) {
+        return new FoWriter(null, foDocument -> (ContentHandler) new FoPassthroughTransform().createHandler(out, null));
+    }
+
+    private int templateBlockCount() {
+        return FoTemplates.getTemplate().getDomDocument().getElementsByTagName("fo:block").getLength();
+    }
+
+    private Document buildWithText(FoTemplate template) {
+        FoDocumentBuilder builder = new FoDocumentBuilder(template);
+        builder.appendHeading(1, "Heading");
+        builder.appendText("Text");
+        builder.endDocument();
+        return builder.build().getDomDocument();
+    }
+
+    private String toXml(Document document) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    private List<TableColumn<Integer>> squareColumns() {
+        return Arrays.asList(
+            new TableColumn<Integer>("Id", i -> i.toString()),
+            new TableColumn<Integer>("Square", i -> Integer.toString(i * i)));
+    }
+
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import uk.co.magictractor.fo.FoTemplates;
+import uk.co.magictractor.fo.modifiers.ElementModifiers;
+
+public class FoFragmentTest {
+
+    private static final FoFragment FRAGMENT = FoFragment.build(FoTemplates.getTemplate(), builder -> {
+        builder.appendHeading(2, "Terms");
+        builder.appendText("Dear ${name}, ${other} ${name}.");
+        builder.endParagraph();
+    });
+
+    @Test
+    public void testAppendFragment() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendText("Before");
+        builder.appendFragment(FRAGMENT);
+        builder.appendFragment(FRAGMENT);
+
+        List<String> blocks = blockTexts(builder.build().getDomDocument());
+
+        assertThat(blocks).endsWith("Before", "Terms", "Dear ${name}, ${other} ${name}.", "Terms", "Dear ${name}, ${other} ${name}.");
+    }
+
+    @Test
+    public void testAppendFragment_slotValues() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendFragment(FRAGMENT, Collections.singletonMap("name", "Ken"));
+
+        List<String> blocks = blockTexts(builder.build().getDomDocument());
+
+        assertThat(blocks).endsWith("Terms", "Dear Ken, ${other} Ken.");
+    }
+
+    @Test
+    public void testAppendFragment_stylesRetained() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate());
+        builder.appendFragment(FRAGMENT);
+        Document document = builder.build().getDomDocument();
+
+        NodeList blocks = document.getElementsByTagName("fo:block");
+        Element heading = (Element) blocks.item(blocks.getLength() - 2);
+        assertThat(heading.getAttribute("font-size")).isEqualTo("130%");
+        assertThat(heading.getOwnerDocument()).isSameAs(document);
+    }
+
+    @Test
+    public void testBuild_id() {
+        assertThatThrownBy(() -> FoFragment.build(FoTemplates.getTemplate(), builder -> {
+            builder.appendText("Terms", ElementModifiers.attributeSetter("id", "terms"));
+            builder.endParagraph();
+        })).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("\"terms\"");
+    }
+
+    @Test
+    public void testBuild_idOverload() {
+        assertThatThrownBy(() -> FoFragment.build(FoTemplates.getTemplate(), builder -> {
+            builder.appendText("Terms", ElementModifiers.highlighterPastelBlue());
+            builder.endParagraph();
+        })).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<String> blockTexts(Document document) {
+        List<String> result = new ArrayList<>();
+        NodeList blocks = document.getElementsByTagName("fo:block");
+        for (int i = 0; i < blocks.getLength(); i++) {
+            result.add(blocks.item(i).getTextContent().trim());
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.compact;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplates;
+import uk.co.magictractor.fo.build.FoDocumentBuilder;
+import uk.co.magictractor.fo.handler.FoPassthroughTransform;
+import uk.co.magictractor.fo.writer.FoWriter;
+
+public class FoBinaryCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        FoDocument document = buildDocument().buildCompact();
+
+        CompactFoDocument decoded = FoBinaryCodec.decode(FoBinaryCodec.encode(document));
+
+        assertThat(write(decoded)).isEqualTo(write(document));
+        assertThat(decoded.getNodeStore().nodeCount()).isEqualTo(((CompactFoDocument) document).getNodeStore().nodeCount());
+    }
+
+    @Test
+    public void testRoundTrip_domDocument() {
+        FoDocument document = buildDocument().build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoBinaryCodec.encode(document, out);
+        CompactFoDocument decoded = FoBinaryCodec.decode(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(write(decoded)).isEqualTo(write(document.freeze()));
+    }
+
+    @Test
+    public void testRoundTrip_metadataAndFontUrls() {
+        ZonedDateTime modificationDate = ZonedDateTime.of(2025, 3, 4, 12, 30, 0, 0, ZoneId.of("+01:00"));
+        FoDocument document = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withMetadataTitle("TITLE")
+                .withMetadataAuthor("AUTHOR")
+                .withMetadataModificationDate(modificationDate)
+                .withMetadataCustomProperty("KEY", "VALUE")
+                .withFontUrl("file:/fonts/font.ttf")
+                .buildCompact();
+
+        CompactFoDocument decoded = FoBinaryCodec.decode(FoBinaryCodec.encode(document));
+
+        assertThat(decoded.getMetadata().getTitle()).isEqualTo("TITLE");
+        assertThat(decoded.getMetadata().getAuthor()).isEqualTo("AUTHOR");
+        assertThat(decoded.getMetadata().getSubject()).isNull();
+        assertThat(decoded.getMetadata().getCreationDate()).isNull();
+        assertThat(decoded.getMetadata().getModificationDate()).isEqualTo(modificationDate);
+        assertThat(decoded.getMetadata().getCustomProperty("KEY")).isEqualTo("VALUE");
+        assertThat(decoded.getFontUrls()).isEqualTo(document.getFontUrls());
+    }
+
+    @Test
+    public void testDecode_notEncoded() {
+        byte[] xml = "<fo:root/>".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> FoBinaryCodec.decode(xml)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testDecode_truncated() {
+        byte[] bytes = FoBinaryCodec.encode(buildDocument().buildCompact());
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertThatThrownBy(() -> FoBinaryCodec.decode(truncated)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testDecode_negativeCount() {
+        // String count of -1 as a five byte varint.
+        byte[] bytes = { 'F', 'O', 'B', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+
+        assertThatThrownBy(() -> FoBinaryCodec.decode(bytes)).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("-1");
+    }
+
+    @Test
+    public void testDecode_oversizedCount() {
+        // String count of Integer.MAX_VALUE, rejected before allocating the string table.
+        byte[] bytes = { 'F', 'O', 'B', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+
+        assertThatThrownBy(() -> FoBinaryCodec.decode(bytes)).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Invalid count");
+    }
+
+    private FoDocumentBuilder buildDocument() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withMetadataTitle("TITLE");
+        builder.appendHeading(1, "Heading");
+        for (int i = 0; i < 5; i++) {
+            builder.appendText("Paragraph " + i + " \u00e9\u20ac\ud83d\ude00");
+            builder.newline();
+            builder.appendText("second line");
+            builder.endParagraph();
+        }
+        return builder;
+    }
+
+    private String write(FoDocument document) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FoWriter(null, foDocument -> (ContentHandler) new FoPassthroughTransform().createHandler(out, null)).write(document);
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.compact;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+import uk.co.magictractor.fo.FoDocument;
+import uk.co.magictractor.fo.FoTemplates;
+import uk.co.magictractor.fo.build.FoDocumentBuilder;
+import uk.co.magictractor.fo.handler.FoPassthroughTransform;
+
+public class FoNodeStoreTest {
+
+    @Test
+    public void testToSax_sameAsTransformer() throws Exception {
+        FoDocument document = buildDocument();
+        FoNodeStore nodeStore = FoNodeStore.of(document.getDomDocument());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Object handler = new FoPassthroughTransform().createHandler(out, null);
+        nodeStore.toSax((ContentHandler) handler, (LexicalHandler) handler);
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(transform(document.getDomDocument()));
+    }
+
+    @Test
+    public void testToDomDocument() throws Exception {
+        FoDocument document = buildDocument();
+        FoNodeStore nodeStore = FoNodeStore.of(document.getDomDocument());
+
+        assertThat(toXml(nodeStore.toDomDocument())).isEqualTo(toXml(document.getDomDocument()));
+    }
+
+    @Test
+    public void testBuildCompact() {
+        FoDocument document = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withMetadataTitle("TITLE")
+                .withMetadataCustomProperty("KEY", "VALUE")
+                .buildCompact();
+
+        assertThat(document).isInstanceOf(CompactFoDocument.class);
+        assertThat(document.getMetadata().getTitle()).isEqualTo("TITLE");
+        assertThat(document.getMetadata().getCustomProperty("KEY")).isEqualTo("VALUE");
+        assertThat(document.getMetadata().getCreationDate()).isNull();
+    }
+
+    @Test
+    public void testBuildCompact_metadataTemplate() {
+        FoDocument document = new FoDocumentBuilder("test_metadata.fo")
+                .buildCompact();
+
+        assertThat(document.getMetadata().getTitle()).isEqualTo("DC:TITLE");
+        assertThat(document.getMetadata().getModificationDate()).isEqualTo(ZonedDateTime.of(2022, 1, 21, 12, 0, 1, 0, ZoneId.of("+01:00")));
+        assertThat(document.getMetadata().getCustomProperty("My Other Property")).isEqualTo("CUSTOM VALUE TWO");
+    }
+
+    private FoDocument buildDocument() {
+        FoDocumentBuilder builder = new FoDocumentBuilder(FoTemplates.getTemplate())
+                .withMetadataTitle("TITLE");
+        for (int i = 0; i < 5; i++) {
+            builder.appendText("Paragraph " + i);
+            builder.newline();
+            builder.appendText("second line");
+            builder.endParagraph();
+        }
+        return builder.build();
+    }
+
+    private String transform(Document domDocument) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Object handler = new FoPassthroughTransform().createHandler(out, null);
+        SAXResult result = new SAXResult((ContentHandler) handler);
+        result.setLexicalHandler((LexicalHandler) handler);
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(domDocument), result);
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String toXml(Document domDocument) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(domDocument), new StreamResult(writer));
+        return writer.toString();
+    }
+
+}
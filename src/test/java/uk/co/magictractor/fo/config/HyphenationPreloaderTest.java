@@ -0,0 +1,95 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.apache.fop.apps.FopFactory;
+import org.apache.fop.apps.FopFactoryBuilder;
+import org.apache.fop.apps.io.ResourceResolverFactory;
+import org.junit.jupiter.api.Test;
+
+public class HyphenationPreloaderTest {
+
+    @Test
+    public void testPreload_realPatterns() throws URISyntaxException {
+        List<PreloadedHyphenation> preloaded = HyphenationPreloader.preload(createTestPatternsFopFactory(), "zz");
+
+        assertThat(preloaded.get(0).isFound()).isTrue();
+        assertThat(preloaded.get(0).getSerializedBytes()).isPositive();
+        assertThat(preloaded.get(0).getHyphenationTree().hyphenate("banana", 2, 2).toString()).isEqualTo("ba-na-na");
+        assertThat(HyphenationPreloader.getPreloaded()).contains(preloaded.get(0));
+    }
+
+    @Test
+    public void testPreload_sharedBetweenConfigs() throws URISyntaxException {
+        List<PreloadedHyphenation> first = HyphenationPreloader.preload(createTestPatternsFopFactory(), "zz");
+        // Patterns are not available to this config's FopFactory, so this is only found if shared.
+        List<PreloadedHyphenation> second = RenderProfile.FAST.getFoConfig().preloadHyphenation("zz");
+
+        assertThat(second.get(0)).isSameAs(first.get(0));
+    }
+
+    @Test
+    public void testPreload_installedIntoExistingFactory() throws URISyntaxException {
+        // Created before the patterns are loaded.
+        FopFactory existing = RenderProfile.WEB.getFoConfig().getFopFactory();
+
+        List<PreloadedHyphenation> preloaded = HyphenationPreloader.preload(createTestPatternsFopFactory(), "zz");
+
+        assertThat(existing.getHyphenationTreeCache().getHyphenationTree("zz", null))
+                .isSameAs(preloaded.get(0).getHyphenationTree());
+    }
+
+    @Test
+    public void testPreload_missNotCached() {
+        List<PreloadedHyphenation> preloaded = DefaultFoConfig.getInstance().preloadHyphenation("qq");
+
+        assertThat(preloaded.get(0).isFound()).isFalse();
+        assertThat(HyphenationPreloader.getPreloaded()).extracting(PreloadedHyphenation::getLanguage).doesNotContain("qq");
+    }
+
+    @Test
+    public void testPreload_languageWithCountry() {
+        List<PreloadedHyphenation> preloaded = DefaultFoConfig.getInstance().preloadHyphenation("de-CH");
+
+        assertThat(preloaded.get(0).getLanguage()).isEqualTo("de_CH");
+    }
+
+    @Test
+    public void testPreload_empty() {
+        assertThatThrownBy(() -> DefaultFoConfig.getInstance().preloadHyphenation(""))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * A new FopFactory each time, so that trees are only shared via
+     * HyphenationPreloader.
+     */
+    private FopFactory createTestPatternsFopFactory() throws URISyntaxException {
+        URI hyphenationBase = getClass().getResource("hyph/").toURI();
+        return new FopFactoryBuilder(hyphenationBase)
+                .setHyphenBaseResourceResolver(ResourceResolverFactory.createInternalResourceResolver(hyphenationBase,
+                    ResourceResolverFactory.createDefaultResourceResolver()))
+                .build();
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class RenderProfileTest {
+
+    @Test
+    public void testDefault() {
+        assertThat(RenderProfile.DEFAULT.getFoConfig()).isSameAs(DefaultFoConfig.getInstance());
+    }
+
+    @Test
+    public void testFast() {
+        FoConfig foConfig = RenderProfile.FAST.getFoConfig();
+
+        assertThat(foConfig).isSameAs(RenderProfile.FAST.getFoConfig());
+        assertThat(((DynamicFoConfig) foConfig).getConfiguration().getPdfLinearization()).isFalse();
+    }
+
+    @Test
+    public void testWeb() {
+        FoConfig foConfig = RenderProfile.WEB.getFoConfig();
+
+        assertThat(foConfig).isSameAs(RenderProfile.WEB.getFoConfig());
+        assertThat(((DynamicFoConfig) foConfig).getConfiguration().getPdfLinearization()).isTrue();
+    }
+
+}
@@ -319,6 +319,42 @@ public class DynamicConfigurationTest {
         assertThat(value).isEqualTo(1.412f);
     }
 
+    @Test
+    public void testGetValueAsBoolean_withDefault_hasChild() throws ConfigurationException {
+        boolean value = checkSameValue(conf -> conf.getChild("boolean").getValueAsBoolean(false));
+        assertThat(value).isTrue();
+    }
+
+    @Test
+    public void testGetValueAsInteger_withDefault_hasChild() throws ConfigurationException {
+        int value = checkSameValue(conf -> conf.getChild("int").getValueAsInteger(7));
+        assertThat(value).isEqualTo(5);
+    }
+
+    @Test
+    public void testGetValueAsFloat_withDefault_hasChild() throws ConfigurationException {
+        float value = checkSameValue(conf -> conf.getChild("float").getValueAsFloat(1.412f));
+        assertThat(value).isEqualTo(1.61803398875f);
+    }
+
+    @Test
+    public void testGetValue_withDefault_empty() throws ConfigurationException {
+        String value = checkSameValue(conf -> conf.getChild("empty").getValue("default"));
+        assertThat(value).isEqualTo("default");
+    }
+
+    @Test
+    public void testGetAttributeAsInteger_withDefault() throws ConfigurationException {
+        int value = checkSameValue(conf -> conf.getChild("attrs").getAttributeAsInteger("int", 0));
+        assertThat(value).isEqualTo(11);
+    }
+
+    @Test
+    public void testGetAttributeAsFloat_withDefault() throws ConfigurationException {
+        float value = checkSameValue(conf -> conf.getChild("attrs").getAttributeAsFloat("float", 0f));
+        assertThat(value).isEqualTo(1.23f);
+    }
+
     @Test
     public void testToString_attributesAndChildren() {
         DynamicConfiguration conf = new DynamicConfiguration("/conf");
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.config.dynamic;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.fop.configuration.Configuration;
+import org.junit.jupiter.api.Test;
+
+public class FopDynamicConfigurationTest {
+
+    @Test
+    public void testDefaultPageSettings() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withDefaultPageSettings("297mm", "210mm");
+
+        assertThat(configuration.getDefaultPageHeight()).isEqualTo("297mm");
+        assertThat(configuration.getDefaultPageWidth()).isEqualTo("210mm");
+    }
+
+    @Test
+    public void testDefaultPageSettings_replaced() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withDefaultPageSettings("297mm", "210mm")
+                .withDefaultPageSettings("11in", "8.5in");
+
+        assertThat(configuration.getChildren("default-page-settings")).hasSize(1);
+        assertThat(configuration.getDefaultPageHeight()).isEqualTo("11in");
+    }
+
+    @Test
+    public void testStrictValidation() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withStrictValidation(false);
+
+        assertThat(configuration.getChild("strict-validation").getValueAsBoolean(true)).isFalse();
+    }
+
+    @Test
+    public void testPdfRenderer_sameInstance() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration();
+
+        assertThat(configuration.getPdfRenderer()).isSameAs(configuration.getPdfRenderer());
+        assertThat(configuration.getChild("renderers").getChildren("renderer")).hasSize(1);
+    }
+
+    @Test
+    public void testPdfLinearization() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withPdfLinearization(true);
+
+        assertThat(configuration.getPdfLinearization()).isTrue();
+
+        // Same path as FOP's PDFRendererConfigParser.
+        Configuration renderer = configuration.getChild("renderers").getChild("renderer");
+        assertThat(renderer.getAttribute("mime", null)).isEqualTo("application/pdf");
+        assertThat(renderer.getChild("linearization").getValueAsBoolean(false)).isTrue();
+    }
+
+    @Test
+    public void testFontAutoDetect() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withFontAutoDetect(true);
+        assertThat(configuration.getFontAutoDetect()).isTrue();
+
+        configuration.withFontAutoDetect(false);
+        assertThat(configuration.getFontAutoDetect()).isFalse();
+    }
+
+    @Test
+    public void testGetters_doNotAddChildren() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration();
+
+        assertThat(configuration.getPdfLinearization()).isFalse();
+        assertThat(configuration.getFontAutoDetect()).isFalse();
+        assertThat(configuration.getFonts().getChildren("directory")).isEmpty();
+        configuration.withFontAutoDetect(false);
+
+        assertThat(configuration.hasChild("renderers")).isFalse();
+    }
+
+    @Test
+    public void testFontDirectories() {
+        FopDynamicConfiguration configuration = new FopDynamicConfiguration()
+                .withFontDirectory("fonts")
+                .withFontDirectory("more-fonts", true);
+
+        Configuration[] directories = configuration.getFonts().getChildren("directory");
+        assertThat(directories).hasSize(2);
+        assertThat(directories[0].getAttributeAsBoolean("recursive", false)).isFalse();
+        assertThat(directories[1].getAttributeAsBoolean("recursive", false)).isTrue();
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.fop.render.intermediate.AbstractIFDocumentHandlerMaker;
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.fo.config.RenderProfile;
+
+public class FoLinearizedPdfTransformTest {
+
+    @Test
+    public void testCreateHandler() {
+        FoLinearizedPdfTransform transform = new FoLinearizedPdfTransform();
+        Object handler = transform.createHandler(new ByteArrayOutputStream(), RenderProfile.FAST.getFoConfig().getFopFactory().newFOUserAgent());
+
+        assertThat(handler).isInstanceOf(AbstractIFDocumentHandlerMaker.class);
+    }
+
+    @Test
+    public void testCreateHandler_fopLinearization() {
+        FoLinearizedPdfTransform transform = new FoLinearizedPdfTransform();
+
+        // The bundled fop.xconf and WEB turn on FOP's own linearization.
+        assertThatThrownBy(() -> transform.createHandler(new ByteArrayOutputStream(), RenderProfile.DEFAULT.getFoConfig().getFopFactory().newFOUserAgent()))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> transform.createHandler(new ByteArrayOutputStream(), RenderProfile.WEB.getFoConfig().getFopFactory().newFOUserAgent()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+}
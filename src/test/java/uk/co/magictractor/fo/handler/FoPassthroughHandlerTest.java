@@ -0,0 +1,108 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import uk.co.magictractor.fo.indent.FoIndent;
+
+public class FoPassthroughHandlerTest {
+
+    @Test
+    public void testIndent_blocks() throws Exception {
+        String xml = "<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\"><fo:block>one</fo:block>"
+                + "<fo:block><fo:block>two</fo:block></fo:block></fo:flow>";
+
+        String actual = passthrough(xml, FoIndent.of(' ', 2));
+
+        assertThat(actual).isEqualTo("<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">\n"
+                + "  <fo:block>one</fo:block>\n"
+                + "  <fo:block>\n"
+                + "    <fo:block>two</fo:block>\n"
+                + "  </fo:block>\n"
+                + "</fo:flow>");
+    }
+
+    @Test
+    public void testIndent_replacesExistingWhitespace() throws Exception {
+        String xml = "<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">\n\t\t<fo:block>one</fo:block>\n</fo:flow>";
+
+        String actual = passthrough(xml, FoIndent.of(' ', 2));
+
+        assertThat(actual).isEqualTo("<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">\n"
+                + "  <fo:block>one</fo:block>\n"
+                + "</fo:flow>");
+    }
+
+    @Test
+    public void testIndent_inlineUnchanged() throws Exception {
+        String xml = "<fo:block xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">one\n<fo:inline> <fo:block>two</fo:block></fo:inline> three</fo:block>";
+
+        String actual = passthrough(xml, FoIndent.of(' ', 2));
+
+        assertThat(actual).isEqualTo(xml);
+    }
+
+    @Test
+    public void testIndent_preservedWhitespaceUnchanged() throws Exception {
+        String xml = "<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">"
+                + "<fo:block linefeed-treatment=\"preserve\">\n  <fo:block>code</fo:block>\n</fo:block></fo:flow>";
+
+        String actual = passthrough(xml, FoIndent.of(' ', 2));
+
+        assertThat(actual).isEqualTo("<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">\n"
+                + "  <fo:block linefeed-treatment=\"preserve\">\n  <fo:block>code</fo:block>\n</fo:block>\n"
+                + "</fo:flow>");
+    }
+
+    @Test
+    public void testNoIndent() throws Exception {
+        String xml = "<fo:flow xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">\n  <fo:block>one</fo:block>\n</fo:flow>";
+
+        String actual = passthrough(xml, null);
+
+        assertThat(actual).isEqualTo(xml);
+    }
+
+    private String passthrough(String xml, FoIndent indent) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FoPassthroughHandler handler = new FoPassthroughHandler(out, indent);
+
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        // Report xmlns attributes, as the DOM to SAX transform does.
+        parserFactory.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+        SAXParser parser = parserFactory.newSAXParser();
+        XMLReader reader = parser.getXMLReader();
+        reader.setContentHandler(handler);
+        reader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+        reader.parse(new InputSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
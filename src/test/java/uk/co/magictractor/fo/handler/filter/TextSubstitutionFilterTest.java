@@ -0,0 +1,77 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.handler.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import uk.co.magictractor.fo.FoDocument;
+
+public class TextSubstitutionFilterTest {
+
+    @Test
+    public void testCharacters_split() throws SAXException {
+        CaptureCharactersHandler capture = new CaptureCharactersHandler();
+        TextSubstitutionFilter filter = new TextSubstitutionFilter(capture, null, variableSubstitutions());
+
+        char[] text = "Hello ${name}, ${unknown}".toCharArray();
+        filter.startElement("", "block", "block", new AttributesImpl());
+        // Split within the variable.
+        filter.characters(text, 0, 9);
+        filter.characters(text, 9, text.length - 9);
+        filter.endElement("", "block", "block");
+
+        assertThat(capture.capturedCharacters()).isEqualTo("Hello World, ${unknown}");
+    }
+
+    @Test
+    public void testAttributes() throws SAXException {
+        Map<String, String> captured = new HashMap<>();
+        CaptureCharactersHandler capture = new CaptureCharactersHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts) {
+                for (int i = 0; i < atts.getLength(); i++) {
+                    captured.put(atts.getQName(i), atts.getValue(i));
+                }
+            }
+        };
+        TextSubstitutionFilter filter = new TextSubstitutionFilter(capture, null, variableSubstitutions());
+
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "role", "role", "CDATA", "${name}");
+        attributes.addAttribute("", "id", "id", "CDATA", "plain");
+        filter.startElement("", "block", "block", attributes);
+
+        assertThat(captured).containsEntry("role", "World").containsEntry("id", "plain");
+        // The original attributes are not modified.
+        assertThat(attributes.getValue("role")).isEqualTo("${name}");
+    }
+
+    private Map<String, Function<FoDocument, String>> variableSubstitutions() {
+        Map<String, Function<FoDocument, String>> variableSubstitutions = new HashMap<>();
+        variableSubstitutions.put("name", doc -> "World");
+        return variableSubstitutions;
+    }
+
+}
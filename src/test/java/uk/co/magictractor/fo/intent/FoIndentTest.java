@@ -53,6 +53,23 @@ public class FoIndentTest {
         assertThat(actual.indentSize()).isEqualTo(1);
     }
 
+    @Test
+    public void testCreateIndent_deep() throws Exception {
+        FoIndent indent = FoIndent.of(' ', 2);
+
+        assertThat(indent.createIndent(0)).isEqualTo("\n");
+        assertThat(indent.createIndent(20)).hasSize(41).startsWith("\n ").endsWith("  ");
+        assertThat(indent.createIndent(1)).isEqualTo("\n  ");
+    }
+
+    @Test
+    public void testCreateIndent_cached() throws Exception {
+        FoIndent indent = FoIndent.of(' ', 4);
+
+        assertThat(indent.createIndent(3)).isSameAs(indent.createIndent(3));
+        assertThat(indent.createIndent(30)).isSameAs(indent.createIndent(30));
+    }
+
     @Test
     public void testInfer_child4spaces() throws Exception {
         String xml = "<parent>\n" +
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.measure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import org.apache.fop.fonts.FontTriplet;
+import org.junit.jupiter.api.Test;
+
+import uk.co.magictractor.fo.config.DefaultFoConfig;
+
+public class TextMeasurerTest {
+
+    // Helvetica is one of the base 14 fonts, so its metrics are always available.
+    // Widths in thousandths of an em are W=944 and i=222.
+    private final TextMeasurer measurer = DefaultFoConfig.getInstance().getTextMeasurer();
+    private final FontTriplet helvetica = measurer.fontLookup("Helvetica", "normal", 400);
+
+    @Test
+    public void testStringWidth() {
+        assertThat(measurer.stringWidth("WiW", helvetica, 10000)).isEqualTo((944 + 222 + 944) * 10);
+    }
+
+    @Test
+    public void testStringWidthPt() {
+        assertThat(measurer.stringWidthPt("WiW", helvetica, 10)).isCloseTo(21.1, within(0.0001));
+    }
+
+    @Test
+    public void testLargestFittingFontSize() {
+        // 4 * 0.944 = 3.776pt per point of font size.
+        assertThat(measurer.largestFittingFontSize("WWWW", helvetica, 40, 6, 20)).isEqualTo(10.5);
+    }
+
+    @Test
+    public void testLargestFittingFontSize_limits() {
+        assertThat(measurer.largestFittingFontSize("WWWW", helvetica, 40, 12, 20)).isEqualTo(12);
+        assertThat(measurer.largestFittingFontSize("WWWW", helvetica, 400, 6, 20)).isEqualTo(20);
+    }
+
+    @Test
+    public void testToPoints() {
+        assertThat(TextMeasurer.toPoints("72pt")).isEqualTo(72);
+        assertThat(TextMeasurer.toPoints("1in")).isEqualTo(72);
+        assertThat(TextMeasurer.toPoints("25.4mm")).isCloseTo(72, within(0.0001));
+    }
+
+    @Test
+    public void testToPoints_relative() {
+        assertThatThrownBy(() -> TextMeasurer.toPoints("50%")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -15,7 +15,10 @@
  */
 package uk.co.magictractor.fo.modifiers;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
 
 import uk.co.magictractor.fo.FoDocument;
 import uk.co.magictractor.fo.FoTestTemplates;
@@ -47,6 +50,22 @@ public class IdOverloadSetterTest {
 
         writerBuilder.build().write(foDoc);
     }
+
+    @Test
+    public void testUniqueId_deterministic() {
+        assertThat(uniqueIds()).containsExactly(";a=1;unique=u1", ";b=2;unique=u2");
+        assertThat(uniqueIds()).containsExactly(";a=1;unique=u1", ";b=2;unique=u2");
+    }
+
+    private String[] uniqueIds() {
+        FoDocumentBuilder docBuilder = new FoDocumentBuilder(FoTestTemplates.getTemplate());
+        Element first = docBuilder.startBlock(new IdOverloadSetter("a", "1"));
+        docBuilder.endBlock();
+        Element second = docBuilder.startBlock(new IdOverloadSetter("b", "2"));
+        docBuilder.endBlock();
+
+        return new String[] { first.getAttribute("id"), second.getAttribute("id") };
+    }
     //    <?xml version="1.0" encoding="UTF-8"?><document xmlns="http://xmlgraphics.apache.org/fop/intermediate" xmlns:xlink="http://www.w3.org/1999/xlink" xmlns:nav="http://xmlgraphics.apache.org/fop/intermediate/document-navigation" xmlns:foi="http://xmlgraphics.apache.org/fop/internal" version="2.0">
     //    <header>
     //    <locale xml:lang="en"/>
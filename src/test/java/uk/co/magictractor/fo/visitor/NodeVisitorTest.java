@@ -0,0 +1,138 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.visitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Text;
+
+import uk.co.magictractor.fo.DomUtil;
+
+public class NodeVisitorTest {
+
+    private static final String XML = "<a id=\"1\"><b>one<c/></b><d>two</d></a>";
+
+    @Test
+    public void testTraverse_sameAsRecursive() {
+        Document document = DomUtil.parseXml(XML);
+        RecordingVisitor recursive = new RecordingVisitor(null);
+        recursive.visitNode(document, 0);
+
+        RecordingVisitor iterative = NodeVisitor.traverse(document, new RecordingVisitor(null));
+
+        assertThat(iterative.events).containsExactly("pre a1", "@id", "pre b2", "one", "pre c3", "post c3", "post b2", "pre d2", "two", "post d2", "post a1");
+        assertThat(iterative.events).isEqualTo(recursive.events);
+    }
+
+    @Test
+    public void testTraverse_deep() {
+        Document document = DomUtil.parseXml("<a/>");
+        Element parent = document.getDocumentElement();
+        for (int i = 0; i < 100_000; i++) {
+            parent = (Element) parent.appendChild(document.createElement("b"));
+        }
+        parent.appendChild(document.createTextNode("deep"));
+
+        RecordingVisitor visitor = NodeVisitor.traverse(document, new RecordingVisitor(null));
+
+        assertThat(visitor.events).hasSize(200_003).contains("deep");
+    }
+
+    @Test
+    public void testComposite() {
+        Document document = DomUtil.parseXml(XML);
+        RecordingVisitor skipping = new RecordingVisitor("b");
+        RecordingVisitor all = new RecordingVisitor(null);
+
+        NodeVisitor.traverse(document, new CompositeNodeVisitor(skipping, all));
+
+        assertThat(skipping.events).containsExactly("pre a1", "@id", "pre b2", "pre d2", "two", "post d2", "post a1");
+        assertThat(all.events).isEqualTo(NodeVisitor.traverse(document, new RecordingVisitor(null)).events);
+    }
+
+    @Test
+    public void testTraverseParallel() {
+        Document document = DomUtil.parseXml("<flow/>");
+        Element flow = document.getDocumentElement();
+        for (int i = 0; i < 1000; i++) {
+            Element block = (Element) flow.appendChild(document.createElement("block"));
+            block.appendChild(document.createTextNode(Integer.toString(i)));
+        }
+        RecordingVisitor sequential = NodeVisitor.traverse(flow.getFirstChild(), new RecordingVisitor(null));
+        for (Element block = (Element) flow.getFirstChild().getNextSibling(); block != null; block = (Element) block.getNextSibling()) {
+            NodeVisitor.traverse(block, sequential);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RecordingVisitor parallel = NodeVisitor.traverseParallel(flow, () -> new RecordingVisitor(null), RecordingVisitor::combine, pool);
+
+            assertThat(parallel.events).isEqualTo(sequential.events);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final class RecordingVisitor implements NodeVisitor {
+
+        private final String skipName;
+        private final List<String> events = new ArrayList<>();
+
+        private RecordingVisitor(String skipName) {
+            this.skipName = skipName;
+        }
+
+        private static RecordingVisitor combine(RecordingVisitor first, RecordingVisitor second) {
+            first.events.addAll(second.events);
+            return first;
+        }
+
+        @Override
+        public int preChildren(Element element, int depth) {
+            events.add("pre " + element.getNodeName() + depth);
+            return element.getNodeName().equals(skipName) ? STATUS_SKIP_CHILDREN : STATUS_CONTINUE;
+        }
+
+        @Override
+        public int postChildren(Element element, int depth) {
+            events.add("post " + element.getNodeName() + depth);
+            return STATUS_CONTINUE;
+        }
+
+        @Override
+        public int visitAttribute(Attr attribute) {
+            events.add("@" + attribute.getName());
+            return STATUS_CONTINUE;
+        }
+
+        @Override
+        public int visitText(Text text, int depth) {
+            events.add(text.getData());
+            return STATUS_CONTINUE;
+        }
+
+    }
+
+}
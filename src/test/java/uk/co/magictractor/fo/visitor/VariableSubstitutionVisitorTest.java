@@ -0,0 +1,88 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.visitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import uk.co.magictractor.fo.DomUtil;
+import uk.co.magictractor.fo.FoDocument;
+
+public class VariableSubstitutionVisitorTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testSubstitute_multiple() {
+        assertThat(visitor().substitute("${a} and ${b}, ${a}")).isEqualTo("A and B, A");
+    }
+
+    @Test
+    public void testSubstitute_noVariables() {
+        String text = "no variables";
+        assertThat(visitor().substitute(text)).isSameAs(text);
+    }
+
+    @Test
+    public void testSubstitute_unknownVariable() {
+        String text = "${unknown} ${unclosed";
+        assertThat(visitor().substitute(text)).isSameAs(text);
+    }
+
+    @Test
+    public void testSubstitute_lazy() {
+        VariableSubstitutionVisitor visitor = visitor();
+        assertThat(calls).hasValue(0);
+
+        visitor.substitute("${b}");
+        visitor.substitute("${b}${b}");
+
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    public void testTraverse_attributes() {
+        Document document = DomUtil.parseXml("<root title=\"${a}\">${b} ${a}</root>");
+        NodeVisitor.traverse(document, visitor());
+
+        Element root = document.getDocumentElement();
+        assertThat(root.getAttribute("title")).isEqualTo("A");
+        assertThat(root.getTextContent()).isEqualTo("B A");
+    }
+
+    private VariableSubstitutionVisitor visitor() {
+        Map<String, Function<FoDocument, String>> variableSubstitutions = new HashMap<>();
+        variableSubstitutions.put("a", doc -> "A");
+        variableSubstitutions.put("b", doc -> {
+            calls.incrementAndGet();
+            return "B";
+        });
+        variableSubstitutions.put("unused", doc -> {
+            throw new IllegalStateException("Should not be evaluated");
+        });
+
+        return new VariableSubstitutionVisitor(null, variableSubstitutions);
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+public class AbortOnFailureContentHandlerTest {
+
+    @Test
+    public void testAbortOnFailure() throws SAXException {
+        ContentHandler delegate = mock(ContentHandler.class);
+        SAXException failure = new SAXException("bang");
+        doThrow(failure).when(delegate).endElement("", "b", "b");
+        Abortable abortable = mock(Abortable.class);
+        ContentHandler handler = new AbortOnFailureContentHandler(delegate, Collections.singletonList(abortable));
+
+        handler.startDocument();
+        handler.endElement("", "a", "a");
+        verify(abortable, never()).abort();
+
+        assertThatThrownBy(() -> handler.endElement("", "b", "b")).isSameAs(failure);
+        verify(abortable).abort();
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.intermediate.IFException;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+public class AsyncIFDocumentHandlerTest {
+
+    @Test
+    public void testCallOrder() throws IFException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped);
+
+        async.startDocument();
+        async.startPageSequence("a");
+        async.endPageSequence();
+        async.endDocument();
+
+        InOrder inOrder = inOrder(wrapped);
+        inOrder.verify(wrapped).startDocument();
+        inOrder.verify(wrapped).startPageSequence("a");
+        inOrder.verify(wrapped).endPageSequence();
+        inOrder.verify(wrapped).endDocument();
+    }
+
+    @Test
+    public void testOutputWritten() throws IFException, IOException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped);
+        async.setResult(new StreamResult(target));
+
+        // Enough for many chunks, with flushes part way through chunks.
+        byte[] expected = new byte[3_000_000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) (i % 251);
+        }
+        OutputStream out = wrappedOutputStream(wrapped);
+        for (int i = 0; i < expected.length; i += 10_000) {
+            out.write(expected, i, Math.min(10_000, expected.length - i));
+            out.flush();
+        }
+        async.endDocument();
+
+        assertThat(target.toByteArray()).isEqualTo(expected);
+    }
+
+    @Test
+    public void testStats() throws IFException, IOException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        List<AsyncOutputStats> statsList = new ArrayList<>();
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped, statsList::add);
+        async.setResult(new StreamResult(new ByteArrayOutputStream()));
+
+        OutputStream out = wrappedOutputStream(wrapped);
+        for (int i = 0; i < 1000; i++) {
+            out.write(new byte[300]);
+            out.flush();
+        }
+        async.endDocument();
+
+        assertThat(statsList).hasSize(1);
+        assertThat(statsList.get(0).getByteCount()).isEqualTo(300_000);
+        // Flushes do not hand off partial chunks, 300,000 bytes fill 4 chunks and part of a fifth.
+        assertThat(statsList.get(0).getChunkCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testFailureRethrown() throws IFException, IOException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        OutputStream target = mock(OutputStream.class);
+        IOException failure = new IOException("bang");
+        doThrow(failure).when(target).write(any(byte[].class), anyInt(), anyInt());
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped);
+        async.setResult(new StreamResult(target));
+
+        wrappedOutputStream(wrapped).write(new byte[100]);
+
+        assertThatThrownBy(async::endDocument).isInstanceOf(IFException.class).hasRootCause(failure);
+    }
+
+    @Test
+    public void testErrorRethrown() throws IFException, IOException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        OutputStream target = mock(OutputStream.class);
+        Error failure = new OutOfMemoryError("bang");
+        doThrow(failure).when(target).write(any(byte[].class), anyInt(), anyInt());
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped);
+        async.setResult(new StreamResult(target));
+
+        wrappedOutputStream(wrapped).write(new byte[100]);
+
+        assertThatThrownBy(async::endDocument).isSameAs(failure);
+    }
+
+    @Test
+    public void testAbort() throws IFException {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class, withSettings().extraInterfaces(Abortable.class));
+        IFDocumentHandler async = AsyncIFDocumentHandler.wrap(wrapped);
+
+        ((Abortable) async).abort();
+        ((Abortable) async).abort();
+
+        verify((Abortable) wrapped, times(2)).abort();
+    }
+
+    private OutputStream wrappedOutputStream(IFDocumentHandler wrapped) throws IFException {
+        ArgumentCaptor<Result> captor = ArgumentCaptor.forClass(Result.class);
+        verify(wrapped).setResult(captor.capture());
+        return ((StreamResult) captor.getValue()).getOutputStream();
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2025 Ken Dobson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.co.magictractor.fo.writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.fop.render.intermediate.IFDocumentHandler;
+import org.apache.fop.render.intermediate.IFException;
+import org.junit.jupiter.api.Test;
+
+public class LinearizingIFDocumentHandlerTest {
+
+    @Test
+    public void testTransferMapped() throws Exception {
+        byte[] bytes = new byte[100_000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Path file = Files.createTempFile("fo-test-", ".pdf");
+        try {
+            Files.write(file, bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            LinearizingIFDocumentHandler.transferMapped(file, out);
+
+            assertThat(out.toByteArray()).isEqualTo(bytes);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEndDocument() throws Exception {
+        AtomicReference<OutputStream> wrappedOut = new AtomicReference<>();
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        doAnswer(invocation -> {
+            Result result = invocation.getArgument(0);
+            wrappedOut.set(((StreamResult) result).getOutputStream());
+            return null;
+        }).when(wrapped).setResult(any());
+        doAnswer(invocation -> {
+            wrappedOut.get().write("%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+            return null;
+        }).when(wrapped).endDocument();
+
+        AtomicReference<Path> linearizerSource = new AtomicReference<>();
+        LinearizingIFDocumentHandler handler = new LinearizingIFDocumentHandler(wrapped, (source, target) -> {
+            linearizerSource.set(source);
+            Files.write(target, ("linearized " + new String(Files.readAllBytes(source), StandardCharsets.US_ASCII))
+                    .getBytes(StandardCharsets.US_ASCII));
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.setResult(new StreamResult(out));
+        handler.endDocument();
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo("linearized %PDF-1.4");
+        // Temp files are deleted.
+        assertThat(linearizerSource.get()).doesNotExist();
+    }
+
+    @Test
+    public void testEndDocument_failure() throws Exception {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        IFException failure = new IFException("bang");
+        doThrow(failure).when(wrapped).endDocument();
+        LinearizingIFDocumentHandler handler = new LinearizingIFDocumentHandler(wrapped, (source, target) -> {
+            throw new AssertionError("Should not be called");
+        });
+
+        handler.setResult(new StreamResult(new ByteArrayOutputStream()));
+        Path unlinearizedFile = handler.getUnlinearizedFile();
+        assertThat(unlinearizedFile).exists();
+
+        assertThatThrownBy(handler::endDocument).isSameAs(failure);
+        assertThat(unlinearizedFile).doesNotExist();
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        IFDocumentHandler wrapped = mock(IFDocumentHandler.class);
+        LinearizingIFDocumentHandler handler = new LinearizingIFDocumentHandler(wrapped, (source, target) -> {
+            throw new AssertionError("Should not be called");
+        });
+
+        handler.setResult(new StreamResult(new ByteArrayOutputStream()));
+        Path unlinearizedFile = handler.getUnlinearizedFile();
+        handler.startDocument();
+        handler.abort();
+
+        assertThat(unlinearizedFile).doesNotExist();
+        // Idempotent.
+        handler.abort();
+    }
+
+}